@@ -0,0 +1,37 @@
+package com.origami.mybatis.annotation;
+
+import com.origami.mybatis.cache.EvictionPolicy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 为Mapper接口开启独立的二级缓存区域
+ * 该Mapper的查询缓存在独立区域中，拥有自己的容量、过期时间、淘汰策略和统计
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheNamespace {
+
+    /**
+     * 最大缓存条目数
+     */
+    int maxEntries() default 1000;
+
+    /**
+     * 过期时间（毫秒）
+     */
+    long ttl() default 30 * 60 * 1000L;
+
+    /**
+     * 最大占用字节数，0 表示只按条目数限制
+     */
+    long maxBytes() default 0;
+
+    /**
+     * 淘汰策略
+     */
+    EvictionPolicy eviction() default EvictionPolicy.LRU;
+}
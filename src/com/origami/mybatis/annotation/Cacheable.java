@@ -0,0 +1,31 @@
+package com.origami.mybatis.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法级缓存配置
+ * 指定ttl或maxEntries时，该查询使用独立的缓存区域，未指定的参数继承所在Mapper的 @CacheNamespace；
+ * value = false 时该查询永不缓存
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+    /**
+     * 是否缓存，false 表示该方法永不缓存
+     */
+    boolean value() default true;
+
+    /**
+     * 过期时间（毫秒），小于0表示继承
+     */
+    long ttl() default -1;
+
+    /**
+     * 最大缓存条目数，小于等于0表示继承
+     */
+    int maxEntries() default -1;
+}
@@ -0,0 +1,26 @@
+package com.origami.mybatis.cache;
+
+/**
+ * 以字节形式存储值的缓存
+ * CacheManager对这类缓存只编码一次，直接把字节交给缓存存储
+ */
+public interface BinaryCache extends Cache {
+
+    /**
+     * 存储已编码的字节，使用缓存默认的过期时间
+     */
+    default void putBytes(CacheKey key, byte[] bytes) {
+        putBytes(key, bytes, 0);
+    }
+
+    /**
+     * 存储已编码的字节
+     * @param ttlMs 过期时间（毫秒），<=0 表示使用缓存默认的过期时间
+     */
+    void putBytes(CacheKey key, byte[] bytes, long ttlMs);
+
+    /**
+     * 获取缓存使用的编解码器
+     */
+    CacheCodec getCodec();
+}
@@ -0,0 +1,499 @@
+package com.origami.mybatis.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制缓存编解码器
+ * 针对查询结果的常见形态（POJO、List、Map、标量）生成紧凑格式：
+ * 1. 每个值以1字节类型标签开头，整数使用变长编码
+ * 2. POJO按类的映射计划（按属性名排序的getter/setter）依次写属性值，不写属性名；
+ *    类名在同一次编码中只写一次，之后用下标引用，并附带属性签名用于解码时校验
+ * 3. 无法识别的类型回退到JDK序列化
+ * 4. 对象图中有循环引用或嵌套超过 {@link #MAX_DEPTH} 层时抛出 IllegalArgumentException，结果不进入缓存
+ * 编码使用线程复用的缓冲区，避免每次put分配新的扩容数组
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte STRING = 5;
+    private static final byte BIG_DECIMAL = 6;
+    private static final byte BIG_INTEGER = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte FLOAT = 9;
+    private static final byte SHORT = 10;
+    private static final byte BYTE = 11;
+    private static final byte LIST = 12;
+    private static final byte HASH_MAP = 13;
+    private static final byte LINKED_HASH_MAP = 14;
+    private static final byte BEAN = 15;
+    private static final byte BEAN_REF = 16;
+    private static final byte JAVA = 17;
+    private static final byte NULL_VALUE = 18;
+
+    // 集合、Map、POJO的最大嵌套层数
+    static final int MAX_DEPTH = 64;
+
+    // 复用缓冲区超过此大小时不再保留，避免大结果长期占用内存
+    private static final int MAX_POOLED_BUFFER = 1024 * 1024;
+
+    private static final ThreadLocal<BufferWriter> WRITERS = ThreadLocal.withInitial(() -> new BufferWriter(1024));
+
+    // 类的映射计划，只反射一次
+    private static final ConcurrentHashMap<Class<?>, BeanPlan> PLANS = new ConcurrentHashMap<>();
+    private static final BeanPlan NO_PLAN = new BeanPlan(null, null, new Method[0], new Method[0], 0);
+
+    private final CacheCodec fallback;
+
+    public BinaryCacheCodec() {
+        this(new JavaSerializationCodec());
+    }
+
+    public BinaryCacheCodec(CacheCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * 一次编码的状态：已写出的类，以及从根到当前位置正在编码的集合、Map、POJO（按对象身份）
+     */
+    private static class EncodeContext {
+        final List<BeanPlan> classTable = new ArrayList<>();
+        final Set<Object> path = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        void enter(Object value) {
+            if (!path.add(value)) {
+                throw new IllegalArgumentException("缓存对象存在循环引用: " + value.getClass().getName());
+            }
+            if (path.size() > MAX_DEPTH) {
+                path.remove(value);
+                throw new IllegalArgumentException("缓存对象嵌套超过" + MAX_DEPTH + "层: " + value.getClass().getName());
+            }
+        }
+
+        void exit(Object value) {
+            path.remove(value);
+        }
+    }
+
+    /**
+     * POJO映射计划：按属性名排序的getter/setter
+     */
+    private static class BeanPlan {
+        final Class<?> type;
+        final Constructor<?> constructor;
+        final Method[] getters;
+        final Method[] setters;
+        final int signature;
+
+        BeanPlan(Class<?> type, Constructor<?> constructor, Method[] getters, Method[] setters, int signature) {
+            this.type = type;
+            this.constructor = constructor;
+            this.getters = getters;
+            this.setters = setters;
+            this.signature = signature;
+        }
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        BufferWriter writer = WRITERS.get();
+        writer.reset();
+        writeValue(writer, value, new EncodeContext());
+        byte[] bytes = writer.toByteArray();
+        if (writer.capacity() > MAX_POOLED_BUFFER) {
+            WRITERS.remove();
+        }
+        return bytes;
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return readValue(new BufferReader(bytes), new ArrayList<>());
+    }
+
+    private void writeValue(BufferWriter out, Object value, EncodeContext context) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value == NullValue.INSTANCE) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeVarLong((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarLong((Long) value);
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeByte(BIG_DECIMAL);
+            out.writeVarLong(decimal.scale());
+            out.writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeVarLong(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeVarLong((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            out.writeBytes(((BigInteger) value).toByteArray());
+        } else if (value.getClass() == ArrayList.class) {
+            Collection<?> list = (Collection<?>) value;
+            context.enter(value);
+            out.writeByte(LIST);
+            out.writeVarLong(list.size());
+            for (Object element : list) {
+                writeValue(out, element, context);
+            }
+            context.exit(value);
+        } else if (value.getClass() == HashMap.class || value.getClass() == LinkedHashMap.class) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            context.enter(value);
+            out.writeByte(value.getClass() == HashMap.class ? HASH_MAP : LINKED_HASH_MAP);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey(), context);
+                writeValue(out, entry.getValue(), context);
+            }
+            context.exit(value);
+        } else {
+            BeanPlan plan = planOf(value.getClass());
+            if (plan != NO_PLAN) {
+                context.enter(value);
+                writeBean(out, value, plan, context);
+                context.exit(value);
+            } else {
+                out.writeByte(JAVA);
+                out.writeBytes(fallback.encode(value));
+            }
+        }
+    }
+
+    private void writeBean(BufferWriter out, Object bean, BeanPlan plan, EncodeContext context) {
+        List<BeanPlan> classTable = context.classTable;
+        int ref = classTable.indexOf(plan);
+        if (ref < 0) {
+            classTable.add(plan);
+            out.writeByte(BEAN);
+            out.writeString(plan.type.getName());
+            out.writeVarLong(plan.signature);
+        } else {
+            out.writeByte(BEAN_REF);
+            out.writeVarLong(ref);
+        }
+        try {
+            for (Method getter : plan.getters) {
+                writeValue(out, getter.invoke(bean), context);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("缓存对象属性读取失败: " + plan.type.getName(), e);
+        }
+    }
+
+    private Object readValue(BufferReader in, List<BeanPlan> classTable) {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return (int) in.readVarLong();
+            case LONG:
+                return in.readVarLong();
+            case STRING:
+                return in.readString();
+            case BIG_DECIMAL: {
+                int scale = (int) in.readVarLong();
+                return new BigDecimal(new BigInteger(in.readBytes()), scale);
+            }
+            case BIG_INTEGER:
+                return new BigInteger(in.readBytes());
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat((int) in.readVarLong());
+            case SHORT:
+                return (short) in.readVarLong();
+            case BYTE:
+                return in.readByte();
+            case LIST: {
+                int size = (int) in.readVarLong();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, classTable));
+                }
+                return list;
+            }
+            case HASH_MAP:
+            case LINKED_HASH_MAP: {
+                int size = (int) in.readVarLong();
+                Map<Object, Object> map = tag == HASH_MAP ? new HashMap<>() : new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in, classTable), readValue(in, classTable));
+                }
+                return map;
+            }
+            case BEAN: {
+                String className = in.readString();
+                int signature = (int) in.readVarLong();
+                BeanPlan plan = resolvePlan(className);
+                if (plan.signature != signature) {
+                    throw new IllegalStateException("缓存对象结构已变化，无法解码: " + className);
+                }
+                classTable.add(plan);
+                return readBean(in, plan, classTable);
+            }
+            case BEAN_REF:
+                return readBean(in, classTable.get((int) in.readVarLong()), classTable);
+            case JAVA:
+                return fallback.decode(in.readBytes());
+            case NULL_VALUE:
+                return NullValue.INSTANCE;
+            default:
+                throw new IllegalStateException("未知的缓存编码类型: " + tag);
+        }
+    }
+
+    private Object readBean(BufferReader in, BeanPlan plan, List<BeanPlan> classTable) {
+        try {
+            Object bean = plan.constructor.newInstance();
+            for (Method setter : plan.setters) {
+                Object value = readValue(in, classTable);
+                if (value != null) {
+                    setter.invoke(bean, value);
+                }
+            }
+            return bean;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("缓存对象构造失败: " + plan.type.getName(), e);
+        }
+    }
+
+    private BeanPlan resolvePlan(String className) {
+        try {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Class<?> type = Class.forName(className, false,
+                    loader != null ? loader : BinaryCacheCodec.class.getClassLoader());
+            BeanPlan plan = planOf(type);
+            if (plan == NO_PLAN) {
+                throw new IllegalStateException("缓存对象类型不再支持二进制解码: " + className);
+            }
+            return plan;
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("缓存对象类型不存在: " + className, e);
+        }
+    }
+
+    /**
+     * 获取类的映射计划，只有可序列化、有公共无参构造、且属性都有成对getter/setter的POJO才使用二进制格式
+     */
+    private static BeanPlan planOf(Class<?> type) {
+        return PLANS.computeIfAbsent(type, BinaryCacheCodec::buildPlan);
+    }
+
+    private static BeanPlan buildPlan(Class<?> type) {
+        if (!Serializable.class.isAssignableFrom(type) || !Modifier.isPublic(type.getModifiers())
+                || type.getName().startsWith("java.")) {
+            return NO_PLAN;
+        }
+        Constructor<?> constructor;
+        try {
+            constructor = type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            return NO_PLAN;
+        }
+
+        TreeMap<String, Method[]> properties = new TreeMap<>();
+        for (Method method : type.getMethods()) {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (name.startsWith("get") && name.length() > 3 && method.getParameterCount() == 0) {
+                properties.computeIfAbsent(name.substring(3), k -> new Method[2])[0] = method;
+            } else if (name.startsWith("is") && name.length() > 2 && method.getParameterCount() == 0
+                    && method.getReturnType() == boolean.class) {
+                properties.computeIfAbsent(name.substring(2), k -> new Method[2])[0] = method;
+            } else if (name.startsWith("set") && name.length() > 3 && method.getParameterCount() == 1) {
+                properties.computeIfAbsent(name.substring(3), k -> new Method[2])[1] = method;
+            }
+        }
+
+        List<Method> getters = new ArrayList<>();
+        List<Method> setters = new ArrayList<>();
+        int signature = type.getName().hashCode();
+        for (Map.Entry<String, Method[]> property : properties.entrySet()) {
+            Method getter = property.getValue()[0];
+            Method setter = property.getValue()[1];
+            if (getter == null || setter == null || setter.getParameterTypes()[0] != getter.getReturnType()) {
+                // 只读或只写的属性无法完整还原，整个类回退到JDK序列化
+                return NO_PLAN;
+            }
+            getters.add(getter);
+            setters.add(setter);
+            signature = signature * 31 + property.getKey().hashCode();
+            signature = signature * 31 + getter.getReturnType().getName().hashCode();
+        }
+        if (getters.isEmpty()) {
+            return NO_PLAN;
+        }
+        return new BeanPlan(type, constructor, getters.toArray(new Method[0]), setters.toArray(new Method[0]), signature);
+    }
+
+    /**
+     * 可复用的字节写入缓冲区
+     */
+    static final class BufferWriter {
+        private byte[] buffer;
+        private int position;
+
+        BufferWriter(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void reset() {
+            position = 0;
+        }
+
+        int capacity() {
+            return buffer.length;
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[position];
+            System.arraycopy(buffer, 0, bytes, 0, position);
+            return bytes;
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * ZigZag + 变长编码，小整数只占1~2字节
+         */
+        void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            ensureCapacity(10);
+            while ((zigzag & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[position++] = (byte) zigzag;
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeString(String value) {
+            writeBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void ensureCapacity(int needed) {
+            if (position + needed > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + needed)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+    }
+
+    /**
+     * 字节读取游标
+     */
+    static final class BufferReader {
+        private final byte[] buffer;
+        private int position;
+
+        BufferReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        byte[] readBytes() {
+            int length = (int) readVarLong();
+            byte[] bytes = new byte[length];
+            System.arraycopy(buffer, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.origami.mybatis.cache;
 
+import java.util.concurrent.Callable;
+
 /**
  * 缓存接口，定义了缓存的基本操作
  * 支持一级缓存和二级缓存的统一抽象
@@ -9,22 +11,38 @@ public interface Cache {
     /**
      * 存储缓存
      */
-    void put(String key, Object value);
+    void put(CacheKey key, Object value);
+    
+    /**
+     * 以指定的有效期存储缓存，ttlMs<=0 时使用缓存自身的过期时间
+     * 默认实现不支持单独的有效期，忽略ttlMs
+     */
+    default void put(CacheKey key, Object value, long ttlMs) {
+        put(key, value);
+    }
     
     /**
      * 获取缓存
      */
-    Object get(String key);
+    Object get(CacheKey key);
+    
+    /**
+     * 获取缓存，reloader用于在后台重新加载临近过期或处于过期宽限期的条目
+     * 默认实现不支持后台刷新，忽略reloader
+     */
+    default Object get(CacheKey key, Callable<Object> reloader) {
+        return get(key);
+    }
     
     /**
      * 检查是否包含指定key
      */
-    boolean containsKey(String key);
+    boolean containsKey(CacheKey key);
     
     /**
      * 移除指定key的缓存
      */
-    void remove(String key);
+    void remove(CacheKey key);
     
     /**
      * 清空所有缓存
@@ -35,4 +53,25 @@ public interface Cache {
      * 获取缓存大小
      */
     int size();
+    
+    /**
+     * 获取统计计数器，不统计的实现返回null
+     */
+    default CacheStats getCacheStats() {
+        return null;
+    }
+    
+    /**
+     * 设置自动移除（容量淘汰、过期）的回调，调用方主动的remove/clear不回调
+     * 默认实现不回调
+     */
+    default void setRemovalListener(RemovalListener listener) {
+    }
+    
+    /**
+     * 条目被缓存自动移除时的回调，在缓存内部锁内调用，实现不能阻塞或再访问该缓存
+     */
+    interface RemovalListener {
+        void onRemoval(CacheKey key);
+    }
 }
@@ -0,0 +1,19 @@
+package com.origami.mybatis.cache;
+
+/**
+ * 缓存编解码器，负责二级缓存值与字节之间的转换
+ * 策略模式：面向字节存储的缓存（如堆外缓存）可以替换不同的编码实现
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码为字节数组
+     * @throws IllegalArgumentException 对象不支持缓存（如未实现Serializable）
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 从字节数组解码
+     */
+    Object decode(byte[] bytes);
+}
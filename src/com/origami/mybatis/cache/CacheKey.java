@@ -0,0 +1,118 @@
+package com.origami.mybatis.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存Key
+ * 由语句ID、SQL、返回类型和参数副本组成，不可变。
+ * 构造时逐个分量增量计算64位哈希，equals逐个比较分量，不存在哈希碰撞导致的误命中，
+ * 命中路径上不需要拼接字符串或计算摘要。
+ */
+public final class CacheKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    // Mapper方法到语句ID的映射，避免每次调用拼接字符串
+    private static final Map<Method, String> STATEMENT_IDS = new ConcurrentHashMap<>();
+
+    // FNV-1a 64位参数
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String statementId;
+    private final String sql;
+    private final Class<?> returnType;
+    private final Object[] args;
+    private final long hash;
+
+    public CacheKey(String statementId, String sql, Class<?> returnType, Object[] args) {
+        this.statementId = statementId;
+        this.sql = sql;
+        this.returnType = returnType;
+        this.args = args == null || args.length == 0 ? NO_ARGS : args.clone();
+
+        long h = FNV_OFFSET;
+        h = update(h, statementId != null ? statementId.hashCode() : 0);
+        h = update(h, sql != null ? sql.hashCode() : 0);
+        h = update(h, returnType != null ? returnType.getName().hashCode() : 0);
+        h = update(h, this.args.length);
+        for (Object arg : this.args) {
+            h = update(h, arg == null ? 0 : arg.getClass().isArray() ? Arrays.deepHashCode(new Object[]{arg}) : arg.hashCode());
+        }
+        this.hash = h;
+    }
+
+    /**
+     * 获取Mapper方法的语句ID：Mapper接口全限定名.方法名
+     */
+    public static String statementIdOf(Method method) {
+        String statementId = STATEMENT_IDS.get(method);
+        if (statementId == null) {
+            statementId = STATEMENT_IDS.computeIfAbsent(method,
+                    m -> m.getDeclaringClass().getName() + "." + m.getName());
+        }
+        return statementId;
+    }
+
+    private static long update(long h, int value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+
+    public String getStatementId() {
+        return statementId;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public Class<?> getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * 获取参数副本
+     */
+    public Object[] getArgs() {
+        return args.clone();
+    }
+
+    /**
+     * 获取64位哈希
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CacheKey)) return false;
+        CacheKey other = (CacheKey) o;
+        return hash == other.hash
+                && returnType == other.returnType
+                && equalsNullable(statementId, other.statementId)
+                && equalsNullable(sql, other.sql)
+                && Arrays.deepEquals(args, other.args);
+    }
+
+    private static boolean equalsNullable(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return statementId + Arrays.toString(args);
+    }
+}
@@ -1,35 +1,116 @@
 package com.origami.mybatis.cache;
 
-import net.sf.jsqlparser.JSQLParserException;
-import net.sf.jsqlparser.parser.CCJSqlParserUtil;
-import net.sf.jsqlparser.statement.Statement;
-import net.sf.jsqlparser.util.TablesNamesFinder;
+import com.origami.mybatis.annotation.CacheNamespace;
+import com.origami.mybatis.annotation.Cacheable;
+import com.origami.mybatis.annotation.Delete;
+import com.origami.mybatis.annotation.Insert;
+import com.origami.mybatis.annotation.Select;
+import com.origami.mybatis.annotation.Update;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.Set;
-import java.util.List;
-import java.util.ArrayList;
 
 /**
- * 缓存管理器，支持一级缓存和二级缓存
- * 一级缓存：SqlSession级别，会话结束即清空
+ * 缓存管理器，管理跨SqlSession共享的二级缓存
+ * 一级缓存由每个SqlSession自己持有（见 {@link LocalCache}），不经过缓存管理器
  * 二级缓存：跨SqlSession，支持内存缓存等多种实现
+ * 缓存区域：@CacheNamespace / @Cacheable 声明的Mapper或方法使用独立的二级缓存区域，
+ * 其余查询使用全局二级缓存；@Cacheable(false) 的方法永不缓存
+ * 多节点部署时，写操作引起的缓存清理通过 {@link InvalidationBus} 广播给其他节点
+ * 统计：每个缓存区域和每条语句各有一组 {@link CacheStats} 计数器，可通过JMX查看
+ * 空结果：查询结果为null（以 {@link NullValue} 存储）、空集合或空Map时使用单独的短过期时间，
+ * 与普通结果一样按表和主键清理
  */
-public class CacheManager implements Cache {
+public class CacheManager implements Cache, CacheManagerMXBean {
 
-    // 一级缓存（SqlSession级别）
-    private final ConcurrentHashMap<String, Object> localCache = new ConcurrentHashMap<>();
+    // 表名到缓存Key的映射关系（该表的所有缓存）
+    private final ConcurrentHashMap<String, Set<CacheKey>> tableToKeys = new ConcurrentHashMap<>();
+    
+    // 表名到非主键查询（列表、聚合等）缓存Key的映射，主键写操作也需要清理这部分
+    private final ConcurrentHashMap<String, Set<CacheKey>> tableToScopedKeys = new ConcurrentHashMap<>();
     
-    // 表名到缓存Key的映射关系
-    private final ConcurrentHashMap<String, Set<String>> tableToKeys = new ConcurrentHashMap<>();
+    // 表名 -> 规范化主键 -> 主键查询缓存Key，按表嵌套，整表清理时直接移除该表的所有行
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Set<CacheKey>>> tableToRowKeys = new ConcurrentHashMap<>();
+    
+    // 主键列名，用于分析按主键定位的语句
+    private volatile String primaryKeyColumn = "id";
+    
+    // SQL解析结果缓存，每条SQL只解析一次
+    private final ConcurrentHashMap<String, SqlMetadata> sqlMetadataCache = new ConcurrentHashMap<>();
+    
+    // 已注册的Mapper接口
+    private final Set<Class<?>> registeredMappers = ConcurrentHashMap.newKeySet();
     
     // 二级缓存（SqlSessionFactory级别）
     private Cache secondLevelCache;
     
+    // 缓存区域：区域名 -> 缓存
+    private final ConcurrentHashMap<String, Cache> regions = new ConcurrentHashMap<>();
+    
+    // 语句ID到所属区域的映射，未登记的语句使用全局二级缓存
+    private final ConcurrentHashMap<String, Cache> statementRegions = new ConcurrentHashMap<>();
+    
+    // 二级缓存的过期与刷新策略，同时应用于后续创建的缓存区域
+    private volatile RefreshPolicy refreshPolicy;
+    
+    // 空结果的过期时间（毫秒），<=0 表示不缓存空结果
+    private volatile long negativeTtlMs = 30 * 1000L;
+    
+    // 永不缓存的语句
+    private final Set<String> uncachedStatements = ConcurrentHashMap.newKeySet();
+    
+    // 本节点ID，用于忽略自己发出的失效消息
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    // 跨节点失效总线，null 表示单节点
+    private volatile InvalidationBus invalidationBus;
+    
+    // 缓存快照文件，null 表示不使用快照
+    private String snapshotFile;
+    private CacheCodec snapshotCodec;
+    private TableVersionSource tableVersionSource;
+    
+    // 启动时加载的快照，条目在第一次查询时才取出；取完或清空所有缓存后为null
+    private volatile CacheSnapshot snapshot;
+    
+    // 语句ID -> 统计计数
+    private final ConcurrentHashMap<String, CacheStats> statementStats = new ConcurrentHashMap<>();
+    
+    // 表名 -> 写操作清理次数
+    private final ConcurrentHashMap<String, LongAdder> tableInvalidations = new ConcurrentHashMap<>();
+    
+    // 失效时钟：每次清理（本地写操作或远程失效消息）递增，查询开始时记下当前值，
+    // 写入二级缓存时与涉及表的最近清理时刻比较，查询期间表被清理过的结果不再写入
+    private final AtomicLong invalidationClock = new AtomicLong();
+    
+    // 表名 -> 最近一次清理时的时钟值
+    private final ConcurrentHashMap<String, Long> tableInvalidatedAt = new ConcurrentHashMap<>();
+    
+    // 最近一次清空所有缓存时的时钟值
+    private volatile long allInvalidatedAt;
+    
+    // 已注册的JMX对象，null 表示未启用JMX
+    private volatile List<ObjectName> registeredMBeans;
+    
     // 缓存操作读写锁
     private final ReadWriteLock cacheLock = new ReentrantReadWriteLock();
     
@@ -39,100 +120,388 @@ public class CacheManager implements Cache {
     
     public CacheManager(Cache secondLevelCache) {
         this.secondLevelCache = secondLevelCache;
+        secondLevelCache.setRemovalListener(this::unregister);
+        if (secondLevelCache instanceof MemoryCache) {
+            ((MemoryCache) secondLevelCache).setNegativeTtl(negativeTtlMs);
+        }
         System.out.println("缓存管理器初始化 - 启用二级缓存");
     }
 
     @Override
-    public void put(String key, Object value) {
-        // 存储到一级缓存
-        localCache.put(key, value);
-        
-        // 如果启用了二级缓存，也存储到二级缓存
-        if (secondLevelCache != null) {
-            // 使用序列化工具检查对象是否可序列化
+    public void put(CacheKey key, Object value) {
+        put(key, value, 0);
+    }
+    
+    @Override
+    public void put(CacheKey key, Object value, long ttlMs) {
+        // 语句所属区域启用了二级缓存时存储到二级缓存
+        Cache region = regionOf(key);
+        if (region != null) {
             try {
-                SerializationUtil.serialize(value); // 验证序列化
-                secondLevelCache.put(key, value);
+                if (region instanceof BinaryCache) {
+                    // 字节存储：只编码一次，字节直接交给缓存
+                    BinaryCache binaryCache = (BinaryCache) region;
+                    binaryCache.putBytes(key, binaryCache.getCodec().encode(value), ttlMs);
+                } else {
+                    // 对象存储：由缓存自身校验Serializable，不做序列化
+                    region.put(key, value, ttlMs);
+                }
+                statsOf(key).recordPut();
             } catch (IllegalArgumentException e) {
                 System.out.println("警告: " + e.getMessage() + " - 跳过二级缓存存储");
-                // 只存储到一级缓存，不影响正常功能
+                // 结果仍保留在会话的一级缓存中，不影响正常功能
             }
         }
     }
     
     /**
      * 存储缓存并建立表名映射关系
+     * 查询涉及的每一张表都会登记，任意一张表被修改都会清理该缓存；
+     * 按主键查询的缓存额外登记到行，主键写操作只清理对应的行
+     */
+    public void putWithTable(CacheKey key, Object value, String sql) {
+        putWithTable(key, value, sql, Long.MAX_VALUE);
+    }
+    
+    /**
+     * 存储数据库查询结果并建立表名映射关系
+     * 查询开始后涉及的表被清理过（结果可能是写操作之前的数据）时不写入二级缓存
+     * @param loadStamp 查询开始前 {@link #currentStamp()} 的值
+     */
+    public void putWithTable(CacheKey key, Object value, String sql, long loadStamp) {
+        if (NullValue.isNegative(value)) {
+            // 空结果使用单独的短过期时间，数据插入后即使没有收到失效消息也能很快查到
+            if (negativeTtlMs <= 0) {
+                return;
+            }
+            store(key, value, sql, negativeTtlMs, loadStamp);
+        } else {
+            store(key, value, sql, 0, loadStamp);
+        }
+    }
+    
+    /**
+     * 当前失效时钟，查询数据库之前取得，写入缓存时传给 {@link #putWithTable(CacheKey, Object, String, long)}
+     */
+    public long currentStamp() {
+        return invalidationClock.get();
+    }
+    
+    /**
+     * SQL涉及的表最近一次被清理时的时钟值（包括清空所有缓存），从未清理过为0
+     */
+    public long getInvalidationStamp(String sql) {
+        long stamp = allInvalidatedAt;
+        for (String tableName : getSqlMetadata(sql).getTables()) {
+            Long tableStamp = tableInvalidatedAt.get(tableName);
+            if (tableStamp != null && tableStamp > stamp) {
+                stamp = tableStamp;
+            }
+        }
+        return stamp;
+    }
+    
+    private void store(CacheKey key, Object value, String sql, long ttlMs, long loadStamp) {
+        SqlMetadata metadata = getSqlMetadata(sql);
+        Set<String> tables = metadata.getTables();
+        if (tables.isEmpty()) {
+            // 无法确定涉及的表，写操作时无法精确清理，只保留在会话的一级缓存中
+            System.out.println("无法解析查询涉及的表，跳过二级缓存: " + sql);
+            return;
+        }
+        
+        cacheLock.writeLock().lock();
+        try {
+            // 清理都在写锁内登记时钟，这里的判断和写入之间不会插入新的清理
+            if (getInvalidationStamp(sql) > loadStamp) {
+                System.out.println("查询期间相关表已被修改，结果不写入二级缓存: " + key);
+                return;
+            }
+            put(key, value, ttlMs);
+            // 没有存进二级缓存（未启用、不可序列化、超过单条上限）时不登记，映射只包含缓存中实际存在的条目
+            Cache region = regionOf(key);
+            if (region == null || !region.containsKey(key)) {
+                return;
+            }
+            // 建立表名到缓存Key的映射；与淘汰回调的移除一样在compute中原子地修改，不会加到刚被移除的空集合里
+            Object keyValue = metadata.getKeyValue(key.getArgs());
+            for (String tableName : tables) {
+                tableToKeys.compute(tableName, (table, keys) -> addKey(keys, key));
+                if (keyValue != null) {
+                    tableToRowKeys.computeIfAbsent(tableName, table -> new ConcurrentHashMap<>())
+                            .compute(normalizeKey(keyValue), (row, keys) -> addKey(keys, key));
+                } else {
+                    tableToScopedKeys.compute(tableName, (table, keys) -> addKey(keys, key));
+                }
+            }
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 写操作后清理相关缓存，并广播给其他节点
+     * 按主键定位的写操作只清理该行的缓存以及该表的列表/聚合查询缓存；
+     * 其他写操作按SQL涉及的表整表清理，找不到表名时清空所有缓存
+     */
+    public void invalidate(String sql, Object[] args) {
+        SqlMetadata metadata = getSqlMetadata(sql);
+        Set<String> tables = metadata.getTables();
+        if (tables.isEmpty()) {
+            invalidateAll();
+            return;
+        }
+        Object keyValue = metadata.getKeyValue(args);
+        for (String tableName : tables) {
+            if (keyValue != null) {
+                clearByKey(tableName, keyValue);
+                publish(new InvalidationMessage(nodeId, tableName, normalizeKey(keyValue)));
+            } else {
+                clearByTable(tableName);
+                publish(new InvalidationMessage(nodeId, tableName, null));
+            }
+        }
+    }
+    
+    /**
+     * 清空所有缓存，并通知其他节点清空
+     */
+    public void invalidateAll() {
+        clearAll();
+        publish(InvalidationMessage.all(nodeId));
+    }
+    
+    private void publish(InvalidationMessage message) {
+        InvalidationBus bus = invalidationBus;
+        if (bus != null) {
+            try {
+                bus.publish(message);
+            } catch (RuntimeException e) {
+                System.err.println("广播缓存失效消息失败: " + message + " - " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 处理其他节点的失效消息：只清理本节点缓存，不再广播
+     */
+    private void onInvalidation(InvalidationMessage message) {
+        if (nodeId.equals(message.getOrigin())) {
+            return;
+        }
+        System.out.println("收到其他节点的缓存失效消息: " + message);
+        if (message.isClearAll()) {
+            clearAll();
+        } else if (message.getKey() != null) {
+            clearByKey(message.getTable(), message.getKey());
+        } else {
+            clearByTable(message.getTable());
+        }
+    }
+    
+    /**
+     * 按主键清理：清理该行的主键查询缓存，以及该表所有非主键查询缓存
      */
-    public void putWithTable(String key, Object value, String sql) {
+    public void clearByKey(String tableName, Object keyValue) {
+        String tableKey = tableName.toLowerCase();
+        
         cacheLock.writeLock().lock();
         try {
-            put(key, value);
+            int cleared = 0;
+            invalidateSnapshot(tableKey);
+            recordTableInvalidation(tableKey);
             
-            // 建立表名到缓存Key的映射
-            String tableName = extractTableNameFromSQL(sql);
-            if (tableName != null) {
-                tableToKeys.computeIfAbsent(tableName.toLowerCase(), 
-                    k -> ConcurrentHashMap.newKeySet()).add(key);
+            ConcurrentHashMap<String, Set<CacheKey>> rows = tableToRowKeys.get(tableKey);
+            Set<CacheKey> rowKeys = rows != null ? rows.remove(normalizeKey(keyValue)) : null;
+            if (rowKeys != null) {
+                for (CacheKey key : rowKeys) {
+                    removeKey(key);
+                }
+                cleared += rowKeys.size();
             }
+            
+            Set<CacheKey> scopedKeys = tableToScopedKeys.remove(tableKey);
+            if (scopedKeys != null) {
+                for (CacheKey key : scopedKeys) {
+                    removeKey(key);
+                }
+                cleared += scopedKeys.size();
+            }
+            
+            System.out.println("已清理表 " + tableName + " 主键 " + keyValue + " 相关缓存，共 " + cleared + " 个缓存项");
         } finally {
             cacheLock.writeLock().unlock();
         }
     }
+    
+    private void invalidateSnapshot(String tableKey) {
+        CacheSnapshot current = snapshot;
+        if (current != null) {
+            current.invalidateTable(tableKey);
+        }
+    }
+    
+    /**
+     * 从二级缓存中删除并移除该Key在所有表上的登记
+     */
+    private void removeKey(CacheKey key) {
+        Cache region = regionOf(key);
+        if (region != null) {
+            region.remove(key);
+        }
+        statsOf(key).recordInvalidation(1);
+        unregister(key);
+    }
+    
+    /**
+     * 移除Key在所有相关表、行上的登记，集合变空时一并移除
+     * 也是二级缓存区域的淘汰、过期回调：条目被自动移除后映射随之清理，映射大小不会超过缓存条目数
+     */
+    private void unregister(CacheKey key) {
+        SqlMetadata metadata = getSqlMetadata(key.getSql());
+        Object keyValue = metadata.getKeyValue(key.getArgs());
+        for (String tableName : metadata.getTables()) {
+            tableToKeys.computeIfPresent(tableName, (table, keys) -> removeKey(keys, key));
+            if (keyValue != null) {
+                ConcurrentHashMap<String, Set<CacheKey>> rows = tableToRowKeys.get(tableName);
+                if (rows != null) {
+                    rows.computeIfPresent(normalizeKey(keyValue), (row, keys) -> removeKey(keys, key));
+                }
+            } else {
+                tableToScopedKeys.computeIfPresent(tableName, (table, keys) -> removeKey(keys, key));
+            }
+        }
+    }
+    
+    private static Set<CacheKey> addKey(Set<CacheKey> keys, CacheKey key) {
+        if (keys == null) {
+            keys = ConcurrentHashMap.newKeySet();
+        }
+        keys.add(key);
+        return keys;
+    }
+    
+    private static Set<CacheKey> removeKey(Set<CacheKey> keys, CacheKey key) {
+        keys.remove(key);
+        return keys.isEmpty() ? null : keys;
+    }
+    
+    /**
+     * 规范化主键值：整数类型统一为long的文本，BigDecimal去掉末尾的0，避免int/long参数产生不同的行标识
+     * 规范化后的文本再次规范化结果不变，可直接用于跨节点消息
+     */
+    private static String normalizeKey(Object keyValue) {
+        if (keyValue instanceof Integer || keyValue instanceof Long
+                || keyValue instanceof Short || keyValue instanceof Byte) {
+            return String.valueOf(((Number) keyValue).longValue());
+        } else if (keyValue instanceof BigDecimal) {
+            return ((BigDecimal) keyValue).stripTrailingZeros().toPlainString();
+        }
+        return String.valueOf(keyValue);
+    }
 
     @Override
-    public Object get(String key) {
+    public Object get(CacheKey key) {
+        return get(key, null);
+    }
+    
+    /**
+     * 获取缓存，reloader交给二级缓存用于临近过期条目的后台刷新
+     */
+    @Override
+    public Object get(CacheKey key, Callable<Object> reloader) {
         cacheLock.readLock().lock();
         try {
-            // 先查二级缓存（跨SqlSession共享）
-            if (secondLevelCache != null) {
-                Object value = secondLevelCache.get(key);
+            Cache region = regionOf(key);
+            if (region != null) {
+                Object value = region.get(key, reloader);
                 if (value != null) {
-                    // 回填到一级缓存
-                    localCache.put(key, value);
-                    System.out.println("二级缓存命中，回填一级缓存");
+                    statsOf(key).recordHit();
+                    if (NullValue.isNegative(value)) {
+                        recordNegativeHit(key, region);
+                    }
+                    System.out.println("二级缓存命中");
                     return value;
                 }
+                statsOf(key).recordMiss();
             }
-            
-            // 再查一级缓存（当前SqlSession）
-            Object value = localCache.get(key);
-            if (value != null) {
-                System.out.println("一级缓存命中");
-                return value;
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+        
+        // 没命中时尝试从启动快照中恢复，仍没有则返回null，由调用方查询数据库
+        CacheSnapshot current = snapshot;
+        return current != null && current.mayContain(key) ? restoreFromSnapshot(key) : null;
+    }
+    
+    /**
+     * 从快照中取出条目并放回二级缓存，保留剩余有效期并重新登记表映射
+     * 持有写锁，避免与写操作的清理交错导致旧数据被放回
+     */
+    private Object restoreFromSnapshot(CacheKey key) {
+        cacheLock.writeLock().lock();
+        try {
+            CacheSnapshot current = snapshot;
+            if (current == null || regionOf(key) == null) {
+                return null;
             }
-            
-            // 都没命中，返回null，由调用方查询数据库
+            CacheSnapshot.Entry entry = current.take(key);
+            if (current.size() == 0) {
+                snapshot = null;
+                System.out.println("缓存快照已全部取出");
+            }
+            if (entry == null) {
+                return null;
+            }
+            store(key, entry.getValue(), key.getSql(), entry.getRemainingTtlMs(), Long.MAX_VALUE);
+            System.out.println("缓存快照命中: " + key);
+            return entry.getValue();
+        } catch (RuntimeException e) {
+            System.out.println("缓存快照条目解码失败，忽略: " + key + " - " + e.getMessage());
             return null;
         } finally {
-            cacheLock.readLock().unlock();
+            cacheLock.writeLock().unlock();
         }
     }
 
     @Override
-    public boolean containsKey(String key) {
-        return localCache.containsKey(key) ||
-               (secondLevelCache != null && secondLevelCache.containsKey(key));
+    public boolean containsKey(CacheKey key) {
+        Cache region = regionOf(key);
+        return region != null && region.containsKey(key);
     }
 
     /**
      * 删除缓存项
      */
     @Override
-    public void remove(String key) {
-        localCache.remove(key);
-        if (secondLevelCache != null) {
-            secondLevelCache.remove(key);
+    public void remove(CacheKey key) {
+        Cache region = regionOf(key);
+        if (region != null) {
+            region.remove(key);
         }
     }
+    
+    /**
+     * 获取缓存Key所属的二级缓存区域，未启用二级缓存时返回null
+     */
+    private Cache regionOf(CacheKey key) {
+        Cache region = statementRegions.get(key.getStatementId());
+        return region != null ? region : secondLevelCache;
+    }
+    
+    /**
+     * 语句是否允许缓存（@Cacheable(false) 的语句永不缓存）
+     */
+    public boolean isCacheable(CacheKey key) {
+        return !uncachedStatements.contains(key.getStatementId());
+    }
 
     /**
-     * 清空一级缓存（当前SqlSession）
+     * 清空所有二级缓存，等同于 {@link #clearAll()}
      */
     @Override
     public void clear() {
-        localCache.clear();
-        System.out.println("一级缓存已清空");
-        
+        clearAll();
     }
     
     /**
@@ -140,13 +509,203 @@ public class CacheManager implements Cache {
      * 仅在写操作时调用
      */
     public void clearAll() {
-        localCache.clear();
-        System.out.println("一级缓存已清空");
-        
+        cacheLock.writeLock().lock();
+        try {
+            allInvalidatedAt = invalidationClock.incrementAndGet();
+            snapshot = null;
+            tableToKeys.clear();
+            tableToScopedKeys.clear();
+            tableToRowKeys.clear();
+            
+            if (secondLevelCache != null) {
+                secondLevelCache.clear();
+                System.out.println("二级缓存已清空");
+            }
+            regions.values().forEach(Cache::clear);
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 清空指定缓存区域，全局二级缓存的区域名为 default
+     * 与 clearAll 一样推进失效时钟，清空前开始的查询结果不会再写回；
+     * 区域的 clear 不触发移除回调，属于该区域的Key从表、行映射中逐个移除
+     */
+    @Override
+    public void clearRegion(String regionName) {
+        Cache region = "default".equals(regionName) ? secondLevelCache : regions.get(regionName);
+        if (region == null) {
+            return;
+        }
+        cacheLock.writeLock().lock();
+        try {
+            allInvalidatedAt = invalidationClock.incrementAndGet();
+            region.clear();
+            Set<CacheKey> keys = new HashSet<>();
+            tableToKeys.values().forEach(keys::addAll);
+            tableToScopedKeys.values().forEach(keys::addAll);
+            tableToRowKeys.values().forEach(rows -> rows.values().forEach(keys::addAll));
+            for (CacheKey key : keys) {
+                if (regionOf(key) == region) {
+                    unregister(key);
+                }
+            }
+            System.out.println("缓存区域已清空: " + regionName);
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 获取所有缓存区域（区域名 -> 缓存），全局二级缓存的区域名为 default
+     */
+    public Map<String, Cache> getRegions() {
+        Map<String, Cache> all = new LinkedHashMap<>();
         if (secondLevelCache != null) {
-            secondLevelCache.clear();
-            System.out.println("二级缓存已清空");
+            all.put("default", secondLevelCache);
+        }
+        all.putAll(regions);
+        return all;
+    }
+    
+    /**
+     * 按表名清理相关缓存（JMX操作）
+     */
+    @Override
+    public void clearTable(String tableName) {
+        clearByTable(SqlMetadata.normalizeTableName(tableName));
+    }
+    
+    @Override
+    public List<String> getRegionNames() {
+        return new ArrayList<>(getRegions().keySet());
+    }
+    
+    @Override
+    public Map<String, Long> getTableInvalidations() {
+        Map<String, Long> result = new TreeMap<>();
+        tableInvalidations.forEach((table, count) -> result.put(table, count.sum()));
+        return result;
+    }
+    
+    /**
+     * 登记一次表清理：计数并推进失效时钟，须在写锁内调用
+     */
+    private void recordTableInvalidation(String tableKey) {
+        tableInvalidations.computeIfAbsent(tableKey, k -> new LongAdder()).increment();
+        tableInvalidatedAt.put(tableKey, invalidationClock.incrementAndGet());
+    }
+    
+    /**
+     * 语句的统计计数器，第一次使用时创建
+     */
+    private CacheStats statsOf(CacheKey key) {
+        CacheStats stats = statementStats.get(key.getStatementId());
+        if (stats == null) {
+            // JMX注册放在 computeIfAbsent 之外，避免持有桶锁时阻塞占住虚拟线程的载体线程；只有放入成功的一方注册
+            CacheStats created = new CacheStats();
+            stats = statementStats.putIfAbsent(key.getStatementId(), created);
+            if (stats == null) {
+                stats = created;
+                registerMBean("CacheStatement", key.getStatementId(), created);
+            }
+        }
+        return stats;
+    }
+    
+    private void recordNegativeHit(CacheKey key, Cache region) {
+        statsOf(key).recordNegativeHit();
+        CacheStats regionStats = region.getCacheStats();
+        if (regionStats != null) {
+            regionStats.recordNegativeHit();
+        }
+    }
+    
+    /**
+     * 记录缓存未命中后查询数据库的耗时
+     */
+    public void recordLoad(CacheKey key, long nanos) {
+        statsOf(key).recordLoad(nanos);
+        Cache region = regionOf(key);
+        CacheStats regionStats = region != null ? region.getCacheStats() : null;
+        if (regionStats != null) {
+            regionStats.recordLoad(nanos);
+        }
+    }
+    
+    /**
+     * 各缓存区域的统计快照（区域名 -> 快照）
+     */
+    public Map<String, CacheStats.Snapshot> getRegionStatistics() {
+        Map<String, CacheStats.Snapshot> result = new LinkedHashMap<>();
+        getRegions().forEach((name, region) -> {
+            CacheStats stats = region.getCacheStats();
+            if (stats != null) {
+                result.put(name, stats.snapshot());
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * 各语句的统计快照（语句ID -> 快照）
+     */
+    public Map<String, CacheStats.Snapshot> getStatementStatistics() {
+        Map<String, CacheStats.Snapshot> result = new TreeMap<>();
+        statementStats.forEach((id, stats) -> result.put(id, stats.snapshot()));
+        return result;
+    }
+    
+    /**
+     * 注册JMX对象：缓存管理器、所有缓存区域和语句统计，之后创建的区域和语句统计也会自动注册
+     */
+    public void enableJmx() {
+        if (registeredMBeans != null) {
+            return;
+        }
+        registeredMBeans = new CopyOnWriteArrayList<>();
+        registerMBean("CacheManager", null, this);
+        getRegions().forEach((name, region) -> {
+            if (region.getCacheStats() != null) {
+                registerMBean("CacheRegion", name, region.getCacheStats());
+            }
+        });
+        statementStats.forEach((id, stats) -> registerMBean("CacheStatement", id, stats));
+    }
+    
+    private void registerMBean(String type, String name, Object mbean) {
+        List<ObjectName> registered = registeredMBeans;
+        if (registered == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.origami.mybatis:type=" + type + ",node=" + nodeId.substring(0, 8)
+                    + (name != null ? ",name=" + ObjectName.quote(name) : ""));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mbean, objectName);
+                registered.add(objectName);
+            }
+        } catch (Exception e) {
+            System.err.println("注册JMX对象失败: " + type + " " + name + " - " + e.getMessage());
+        }
+    }
+    
+    private void unregisterMBeans() {
+        List<ObjectName> registered = registeredMBeans;
+        if (registered == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (Exception e) {
+                System.err.println("注销JMX对象失败: " + objectName + " - " + e.getMessage());
+            }
         }
+        registeredMBeans = null;
     }
     
     /**
@@ -161,20 +720,16 @@ public class CacheManager implements Cache {
         cacheLock.writeLock().lock();
         try {
             String tableKey = tableName.toLowerCase();
-            Set<String> keys = tableToKeys.get(tableKey);
+            invalidateSnapshot(tableKey);
+            recordTableInvalidation(tableKey);
+            
+            // 先整体摘下该表的映射，再逐个删除缓存项并移除它们在其他表上的登记
+            Set<CacheKey> keys = tableToKeys.remove(tableKey);
+            tableToScopedKeys.remove(tableKey);
+            tableToRowKeys.remove(tableKey);
             
             if (keys != null && !keys.isEmpty()) {
-                // 从一级缓存中删除相关的缓存项
-                keys.forEach(key -> {
-                    localCache.remove(key);
-                    // 同时从二级缓存中删除
-                    if (secondLevelCache != null) {
-                        secondLevelCache.remove(key);
-                    }
-                });
-                
-                // 清理映射关系
-                tableToKeys.remove(tableKey);
+                keys.forEach(this::removeKey);
                 
                 System.out.println("已清理表 " + tableName + " 相关缓存，共 " + keys.size() + " 个缓存项");
             } else {
@@ -185,77 +740,207 @@ public class CacheManager implements Cache {
         }
     }
 
+    /**
+     * 所有二级缓存区域的条目总数
+     */
     @Override
     public int size() {
-        return localCache.size();
+        return getRegions().values().stream().mapToInt(Cache::size).sum();
     }
 
     /**
-     * 生成缓存key (MD5)
+     * 获取SQL解析元数据，每条SQL只解析一次
      */
-    public String generateCacheKey(String sql, Object[] args, Class<?> returnType) {
-        StringBuilder keyBuilder = new StringBuilder();
-        keyBuilder.append(sql).append("|").append(returnType.getName());
-
-        if (args != null) {
-            for (Object arg : args) {
-                keyBuilder.append("|").append(arg != null ? arg.toString() : "null");
+    public SqlMetadata getSqlMetadata(String sql) {
+        SqlMetadata metadata = sqlMetadataCache.get(sql);
+        if (metadata == null) {
+            // 在 computeIfAbsent 之外解析：解析会打印日志，持有桶锁时阻塞会占住虚拟线程的载体线程，
+            // 同一SQL的其他调用方再在桶锁上阻塞，载体线程耗尽后死锁。并发首次解析的结果相同，保留先放入的一个
+            SqlMetadata parsed = SqlMetadata.parse(sql, primaryKeyColumn);
+            metadata = sqlMetadataCache.putIfAbsent(sql, parsed);
+            if (metadata == null) {
+                metadata = parsed;
             }
         }
-
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hash = md.digest(keyBuilder.toString().getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
+        return metadata;
+    }
+    
+    /**
+     * 注册Mapper接口：预先解析所有注解SQL，请求路径上不再运行解析器；
+     * 同时根据 @CacheNamespace / @Cacheable 创建缓存区域
+     */
+    public void registerMapper(Class<?> mapperClass) {
+        if (!registeredMappers.add(mapperClass)) {
+            return;
+        }
+        CacheNamespace namespace = mapperClass.getAnnotation(CacheNamespace.class);
+        Cache namespaceRegion = null;
+        if (namespace != null) {
+            namespaceRegion = regions.computeIfAbsent(mapperClass.getName(), name -> createRegion(name,
+                    namespace.maxEntries(), namespace.ttl(), namespace.maxBytes(), namespace.eviction()));
+        }
+        
+        for (Method method : mapperClass.getMethods()) {
+            String statementId = CacheKey.statementIdOf(method);
+            Cacheable cacheable = method.getAnnotation(Cacheable.class);
+            if (cacheable != null && !cacheable.value()) {
+                uncachedStatements.add(statementId);
+            } else if (cacheable != null && (cacheable.ttl() >= 0 || cacheable.maxEntries() > 0)) {
+                // 方法级独立区域，未指定的参数继承命名空间
+                int maxEntries = cacheable.maxEntries() > 0 ? cacheable.maxEntries()
+                        : namespace != null ? namespace.maxEntries() : 1000;
+                long ttl = cacheable.ttl() >= 0 ? cacheable.ttl()
+                        : namespace != null ? namespace.ttl() : 30 * 60 * 1000L;
+                statementRegions.put(statementId, regions.computeIfAbsent(statementId, name -> createRegion(name,
+                        maxEntries, ttl, namespace != null ? namespace.maxBytes() : 0,
+                        namespace != null ? namespace.eviction() : EvictionPolicy.LRU)));
+            } else if (namespaceRegion != null) {
+                statementRegions.put(statementId, namespaceRegion);
+            }
+            
+            String sql = null;
+            if (method.isAnnotationPresent(Select.class)) {
+                sql = method.getAnnotation(Select.class).value();
+            } else if (method.isAnnotationPresent(Insert.class)) {
+                sql = method.getAnnotation(Insert.class).value();
+            } else if (method.isAnnotationPresent(Update.class)) {
+                sql = method.getAnnotation(Update.class).value();
+            } else if (method.isAnnotationPresent(Delete.class)) {
+                sql = method.getAnnotation(Delete.class).value();
+            }
+            if (sql != null) {
+                getSqlMetadata(sql);
             }
-            return hexString.toString();
-        } catch (Exception e) {
-            // 如果MD5失败，回退到简单的hashCode
-            return String.valueOf(keyBuilder.toString().hashCode());
         }
+        System.out.println("Mapper注册完成: " + mapperClass.getSimpleName() + "，已解析SQL数: " + sqlMetadataCache.size());
     }
     
     /**
-     * 从SQL语句中提取表名
+     * 创建缓存区域，单条上限取区域字节预算的1/16
      */
-    public String extractTableNameFromSQL(String sql) {
-        if (sql == null || sql.trim().isEmpty()) {
-            return null;
+    private Cache createRegion(String name, int maxEntries, long ttl, long maxBytes, EvictionPolicy eviction) {
+        MemoryCache region = new MemoryCache(name, maxEntries, ttl, maxBytes, maxBytes > 0 ? maxBytes / 16 : 0, eviction);
+        region.setRefreshPolicy(refreshPolicy);
+        region.setNegativeTtl(negativeTtlMs);
+        region.setRemovalListener(this::unregister);
+        registerMBean("CacheRegion", name, region.getCacheStats());
+        return region;
+    }
+    
+    /**
+     * 设置主键列名（默认 id），需在注册Mapper之前设置
+     */
+    public void setPrimaryKeyColumn(String primaryKeyColumn) {
+        this.primaryKeyColumn = primaryKeyColumn;
+        sqlMetadataCache.clear();
+    }
+    
+    /**
+     * 设置空结果（null、空集合、空Map）的过期时间，<=0 表示不缓存空结果
+     */
+    public void setNegativeTtl(long negativeTtlMs) {
+        this.negativeTtlMs = negativeTtlMs;
+        for (Cache region : getRegions().values()) {
+            if (region instanceof MemoryCache) {
+                ((MemoryCache) region).setNegativeTtl(negativeTtlMs);
+            }
         }
-        
+    }
+    
+    /**
+     * 设置过期与刷新策略（TTL抖动、提前刷新、过期宽限），需在注册Mapper之前设置
+     */
+    public void setRefreshPolicy(RefreshPolicy refreshPolicy) {
+        this.refreshPolicy = refreshPolicy;
+        if (secondLevelCache instanceof MemoryCache) {
+            ((MemoryCache) secondLevelCache).setRefreshPolicy(refreshPolicy);
+        }
+    }
+    
+    /**
+     * 启用缓存快照：关闭时保存二级缓存，启动时加载
+     * @param file 快照文件路径
+     * @param codec 快照中Key参数和缓存值的编解码器
+     * @param versionSource 表版本来源，停机期间被修改过的表对应的缓存在加载时丢弃
+     */
+    public void setSnapshot(String file, CacheCodec codec, TableVersionSource versionSource) {
+        this.snapshotFile = file;
+        this.snapshotCodec = codec;
+        this.tableVersionSource = versionSource;
+    }
+    
+    /**
+     * 加载快照文件，条目在第一次查询时才解码并放回二级缓存
+     */
+    public void loadSnapshot() {
+        if (snapshotFile != null) {
+            snapshot = CacheSnapshot.open(snapshotFile, snapshotCodec, tableVersionSource);
+        }
+    }
+    
+    /**
+     * 把所有内存二级缓存区域中未过期的条目写入快照文件
+     * @return 写入的条目数
+     */
+    public int saveSnapshot() {
+        if (snapshotFile == null) {
+            return 0;
+        }
+        CacheSnapshot.Writer writer = new CacheSnapshot.Writer(snapshotCodec);
+        cacheLock.readLock().lock();
         try {
-            // 使用JSqlParser解析SQL
-            Statement statement = CCJSqlParserUtil.parse(sql);
-            TablesNamesFinder tablesNamesFinder = new TablesNamesFinder();
-            Set<String> tableNamesSet = tablesNamesFinder.getTables(statement);
-            List<String> tableNames = new ArrayList<>(tableNamesSet);
-            
-            if (!tableNames.isEmpty()) {
-                // 返回第一个表名（主表）
-                String tableName = tableNames.get(0);
-                // 处理schema.table格式，只取表名部分
-                if (tableName.contains(".")) {
-                    tableName = tableName.substring(tableName.lastIndexOf(".") + 1);
+            for (Cache region : getRegions().values()) {
+                if (region instanceof MemoryCache) {
+                    ((MemoryCache) region).forEachEntry((key, value, expireAt) ->
+                            writer.add(key, value, expireAt, getSqlMetadata(key.getSql()).getTables()));
                 }
-                // 移除引号
-                tableName = tableName.replaceAll("[`\"'\\[\\]]", "");
-                
-                System.out.println("解析成功 - 主表: " + tableName +
-                                 (tableNames.size() > 1 ? ", 涉及表数: " + tableNames.size() : ""));
-                return tableName.toLowerCase();
             }
-            
-        } catch (JSQLParserException e) {
-            System.out.println("解析失败: " + e.getMessage());
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+        try {
+            int count = writer.writeTo(snapshotFile, tableVersionSource);
+            System.out.println("缓存快照已保存: " + snapshotFile + "，共 " + count + " 个缓存项");
+            return count;
+        } catch (IOException e) {
+            System.err.println("缓存快照保存失败: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    /**
+     * 设置跨节点失效总线，本节点写操作引起的清理会广播出去，其他节点的清理消息在本节点执行
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(this::onInvalidation);
+        }
+    }
+    
+    /**
+     * 获取本节点ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    /**
+     * 关闭后台刷新线程和失效总线，注销JMX对象，释放堆外缓存
+     */
+    public void shutdown() {
+        unregisterMBeans();
+        if (refreshPolicy != null) {
+            refreshPolicy.shutdown();
+        }
+        if (invalidationBus != null) {
+            invalidationBus.close();
+        }
+        for (Cache region : getRegions().values()) {
+            if (region instanceof OffHeapCache) {
+                ((OffHeapCache) region).close();
+            }
         }
-        
-        return null;
     }
     
     /**
@@ -263,6 +948,13 @@ public class CacheManager implements Cache {
      */
     public void setSecondLevelCache(Cache secondLevelCache) {
         this.secondLevelCache = secondLevelCache;
+        secondLevelCache.setRemovalListener(this::unregister);
+        if (secondLevelCache instanceof MemoryCache) {
+            ((MemoryCache) secondLevelCache).setNegativeTtl(negativeTtlMs);
+            if (refreshPolicy != null) {
+                ((MemoryCache) secondLevelCache).setRefreshPolicy(refreshPolicy);
+            }
+        }
     }
 
 }
@@ -0,0 +1,26 @@
+package com.origami.mybatis.cache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存管理器的JMX接口：查看缓存区域和按表清理次数，手动清理区域或表
+ */
+public interface CacheManagerMXBean {
+
+    /**
+     * 所有二级缓存区域名，全局二级缓存为 default
+     */
+    List<String> getRegionNames();
+
+    /**
+     * 各表被写操作清理缓存的次数
+     */
+    Map<String, Long> getTableInvalidations();
+
+    void clearRegion(String regionName);
+
+    void clearTable(String tableName);
+
+    void clearAll();
+}
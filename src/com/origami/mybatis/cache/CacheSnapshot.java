@@ -0,0 +1,308 @@
+package com.origami.mybatis.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 二级缓存快照，用于重启后预热
+ * 关闭时把缓存条目写入快照文件；启动时以内存映射方式打开，只扫描记录头建立 哈希 -> 偏移 的索引，
+ * 缓存值在第一次被查询时才解码，打开快照的开销与缓存值的大小无关。
+ *
+ * 文件格式：
+ * 头部：魔数、版本、生成时间、表数、逐表（表名、表版本）、条目数
+ * 记录：记录长度、Key哈希、过期时间点、表数、表下标...、Key（语句ID、SQL、返回类型名、参数）、值
+ *
+ * 打开时逐表比较保存的版本与当前版本，版本未知或已变化的表（停机期间被修改过）涉及的条目全部丢弃；
+ * 打开之后的写操作通过 {@link #invalidateTable(String)} 使尚未取出的条目失效。
+ */
+public class CacheSnapshot {
+
+    private static final int MAGIC = 0x4D594353;
+    private static final int VERSION = 1;
+    // 表版本未知
+    private static final long UNKNOWN_VERSION = Long.MIN_VALUE;
+
+    private final MappedByteBuffer buffer;
+    private final CacheCodec codec;
+    private final String[] tables;
+    // Key哈希 -> 记录偏移，取出后移除
+    private final ConcurrentHashMap<Long, Integer> index = new ConcurrentHashMap<>();
+    // 打开之后被写操作修改过的表
+    private final Set<String> invalidatedTables = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 从快照中取出的条目
+     */
+    public static class Entry {
+        private final Object value;
+        private final long remainingTtlMs;
+
+        Entry(Object value, long remainingTtlMs) {
+            this.value = value;
+            this.remainingTtlMs = remainingTtlMs;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * 剩余有效期（毫秒），0 表示永不过期
+         */
+        public long getRemainingTtlMs() {
+            return remainingTtlMs;
+        }
+    }
+
+    private CacheSnapshot(MappedByteBuffer buffer, CacheCodec codec, String[] tables) {
+        this.buffer = buffer;
+        this.codec = codec;
+        this.tables = tables;
+    }
+
+    /**
+     * 打开快照文件，文件不存在时返回null
+     */
+    public static CacheSnapshot open(String file, CacheCodec codec, TableVersionSource versionSource) {
+        Path path = Paths.get(file);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                System.out.println("缓存快照格式不匹配，忽略: " + file);
+                return null;
+            }
+            long createdAt = buffer.getLong();
+
+            // 表及保存时的版本
+            String[] tables = new String[buffer.getInt()];
+            long[] savedVersions = new long[tables.length];
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = readString(buffer);
+                savedVersions[i] = buffer.getLong();
+            }
+            Map<String, Long> currentVersions = tables.length == 0 ? Collections.emptyMap()
+                    : versionSource.getVersions(new HashSet<>(Arrays.asList(tables)));
+            boolean[] valid = new boolean[tables.length];
+            int staleTables = 0;
+            for (int i = 0; i < tables.length; i++) {
+                Long current = currentVersions.get(tables[i]);
+                valid[i] = savedVersions[i] != UNKNOWN_VERSION && current != null && current == savedVersions[i];
+                if (!valid[i]) {
+                    staleTables++;
+                }
+            }
+
+            CacheSnapshot snapshot = new CacheSnapshot(buffer, codec, tables);
+            int total = buffer.getInt();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < total; i++) {
+                int position = buffer.position();
+                int length = buffer.getInt();
+                long hash = buffer.getLong();
+                long expireAt = buffer.getLong();
+                boolean keep = expireAt == 0 || expireAt > now;
+                int tableCount = buffer.getShort();
+                for (int t = 0; t < tableCount; t++) {
+                    keep &= valid[buffer.getShort()];
+                }
+                if (keep) {
+                    snapshot.index.put(hash, position);
+                }
+                buffer.position(position + 4 + length);
+            }
+            System.out.println("缓存快照已加载: " + file + " - 生成于 " + new Date(createdAt)
+                    + ", 可用条目: " + snapshot.index.size() + "/" + total + ", 已变化的表: " + staleTables);
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("缓存快照加载失败，忽略: " + file + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 取出Key对应的条目，每个条目只能取出一次；不存在、已过期或已失效时返回null
+     */
+    public Entry take(CacheKey key) {
+        Integer position = index.remove(key.getHash());
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + 4 + 8);
+        long expireAt = record.getLong();
+        long now = System.currentTimeMillis();
+        if (expireAt != 0 && expireAt <= now) {
+            return null;
+        }
+        int tableCount = record.getShort();
+        for (int t = 0; t < tableCount; t++) {
+            if (invalidatedTables.contains(tables[record.getShort()])) {
+                return null;
+            }
+        }
+
+        // 逐个比较Key的分量，哈希相同但Key不同时视为未命中
+        if (!readString(record).equals(key.getStatementId())
+                || !readString(record).equals(key.getSql())
+                || !readString(record).equals(key.getReturnType().getName())) {
+            return null;
+        }
+        List<?> args = (List<?>) codec.decode(readBytes(record));
+        if (!Arrays.deepEquals(args.toArray(), key.getArgs())) {
+            return null;
+        }
+        Object value = codec.decode(readBytes(record));
+        return new Entry(value, expireAt == 0 ? 0 : expireAt - now);
+    }
+
+    /**
+     * 快照中是否可能有该Key的条目（只查索引，不解码）
+     */
+    public boolean mayContain(CacheKey key) {
+        return index.containsKey(key.getHash());
+    }
+
+    /**
+     * 表被修改后，快照中涉及该表的条目不再返回
+     */
+    public void invalidateTable(String table) {
+        invalidatedTables.add(table);
+    }
+
+    /**
+     * 尚未取出的条目数
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 丢弃所有尚未取出的条目
+     */
+    public void clear() {
+        index.clear();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 快照写入器：收集条目后一次性写入文件（先写临时文件再替换，写入失败不会破坏旧快照）
+     */
+    public static class Writer {
+
+        private final CacheCodec codec;
+        private final Map<String, Integer> tableIndex = new LinkedHashMap<>();
+        private final List<byte[]> records = new ArrayList<>();
+
+        public Writer(CacheCodec codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * 添加条目，Key参数或值无法编码时跳过
+         * @param expireAt 过期时间点，0 表示永不过期
+         * @param tables 条目涉及的表
+         */
+        public void add(CacheKey key, Object value, long expireAt, Set<String> tables) {
+            if (tables.isEmpty()) {
+                // 无法校验表版本的条目不进入快照
+                return;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeLong(key.getHash());
+                out.writeLong(expireAt);
+                out.writeShort(tables.size());
+                for (String table : tables) {
+                    Integer index = tableIndex.get(table);
+                    if (index == null) {
+                        index = tableIndex.size();
+                        tableIndex.put(table, index);
+                    }
+                    out.writeShort(index);
+                }
+                writeString(out, key.getStatementId());
+                writeString(out, key.getSql());
+                writeString(out, key.getReturnType().getName());
+                writeBytes(out, codec.encode(new ArrayList<>(Arrays.asList(key.getArgs()))));
+                writeBytes(out, codec.encode(value));
+                out.flush();
+                records.add(bytes.toByteArray());
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("跳过无法写入快照的缓存: " + key + " - " + e.getMessage());
+            }
+        }
+
+        /**
+         * 写入快照文件
+         * @param versionSource 用于记录各表当前版本
+         * @return 写入的条目数
+         */
+        public int writeTo(String file, TableVersionSource versionSource) throws IOException {
+            Map<String, Long> versions = tableIndex.isEmpty() ? Collections.emptyMap()
+                    : versionSource.getVersions(tableIndex.keySet());
+            Path path = Paths.get(file);
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeInt(tableIndex.size());
+                for (String table : tableIndex.keySet()) {
+                    writeString(out, table);
+                    Long version = versions.get(table);
+                    out.writeLong(version != null ? version : UNKNOWN_VERSION);
+                }
+                out.writeInt(records.size());
+                for (byte[] record : records) {
+                    out.writeInt(record.length);
+                    out.write(record);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            return records.size();
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
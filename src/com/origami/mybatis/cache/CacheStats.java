@@ -0,0 +1,250 @@
+package com.origami.mybatis.cache;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存统计计数器
+ * 使用分段计数器（LongAdder），命中路径上只做一次无锁累加，多线程并发时没有争用；
+ * 读取时汇总各分段，结果是近似的瞬时值。
+ */
+public class CacheStats implements CacheStatsMXBean {
+
+    /**
+     * 淘汰原因
+     */
+    public enum EvictionCause {
+        // 超过条目数上限
+        SIZE,
+        // 超过字节容量
+        CAPACITY
+    }
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder capacityEvictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAccumulator maxLoadNanos = new LongAccumulator(Long::max, 0);
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * 命中的是空结果，同时计入命中次数
+     */
+    public void recordNegativeHit() {
+        negativeHits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordPut() {
+        puts.increment();
+    }
+
+    public void recordEviction(EvictionCause cause) {
+        if (cause == EvictionCause.SIZE) {
+            sizeEvictions.increment();
+        } else {
+            capacityEvictions.increment();
+        }
+    }
+
+    public void recordExpiration() {
+        expirations.increment();
+    }
+
+    public void recordInvalidation(int count) {
+        invalidations.add(count);
+    }
+
+    /**
+     * 记录一次数据库加载耗时
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+        maxLoadNanos.accumulate(nanos);
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getNegativeHitCount() {
+        return negativeHits.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getPutCount() {
+        return puts.sum();
+    }
+
+    @Override
+    public long getSizeEvictionCount() {
+        return sizeEvictions.sum();
+    }
+
+    @Override
+    public long getCapacityEvictionCount() {
+        return capacityEvictions.sum();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    @Override
+    public double getAverageLoadMillis() {
+        long count = loads.sum();
+        return count == 0 ? 0 : loadNanos.sum() / 1_000_000.0 / count;
+    }
+
+    @Override
+    public double getMaxLoadMillis() {
+        return maxLoadNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        negativeHits.reset();
+        puts.reset();
+        sizeEvictions.reset();
+        capacityEvictions.reset();
+        expirations.reset();
+        invalidations.reset();
+        loads.reset();
+        loadNanos.reset();
+        maxLoadNanos.reset();
+    }
+
+    /**
+     * 获取当前计数的快照
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * 统计快照，不可变
+     */
+    public static class Snapshot {
+        private final long hitCount;
+        private final long missCount;
+        private final long negativeHitCount;
+        private final long putCount;
+        private final long sizeEvictionCount;
+        private final long capacityEvictionCount;
+        private final long expirationCount;
+        private final long invalidationCount;
+        private final long loadCount;
+        private final double averageLoadMillis;
+        private final double maxLoadMillis;
+
+        Snapshot(CacheStats stats) {
+            this.hitCount = stats.getHitCount();
+            this.missCount = stats.getMissCount();
+            this.negativeHitCount = stats.getNegativeHitCount();
+            this.putCount = stats.getPutCount();
+            this.sizeEvictionCount = stats.getSizeEvictionCount();
+            this.capacityEvictionCount = stats.getCapacityEvictionCount();
+            this.expirationCount = stats.getExpirationCount();
+            this.invalidationCount = stats.getInvalidationCount();
+            this.loadCount = stats.getLoadCount();
+            this.averageLoadMillis = stats.getAverageLoadMillis();
+            this.maxLoadMillis = stats.getMaxLoadMillis();
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public long getNegativeHitCount() {
+            return negativeHitCount;
+        }
+
+        public double getHitRatio() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0 : (double) hitCount / total;
+        }
+
+        public long getPutCount() {
+            return putCount;
+        }
+
+        public long getSizeEvictionCount() {
+            return sizeEvictionCount;
+        }
+
+        public long getCapacityEvictionCount() {
+            return capacityEvictionCount;
+        }
+
+        public long getExpirationCount() {
+            return expirationCount;
+        }
+
+        public long getInvalidationCount() {
+            return invalidationCount;
+        }
+
+        public long getLoadCount() {
+            return loadCount;
+        }
+
+        public double getAverageLoadMillis() {
+            return averageLoadMillis;
+        }
+
+        public double getMaxLoadMillis() {
+            return maxLoadMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("命中: %d (空结果 %d), 未命中: %d, 命中率: %.2f%%, 写入: %d, 淘汰(条目数/容量): %d/%d, 过期: %d, 清理: %d, 加载: %d次 平均%.2fms 最大%.2fms",
+                    hitCount, negativeHitCount, missCount, getHitRatio() * 100, putCount, sizeEvictionCount, capacityEvictionCount,
+                    expirationCount, invalidationCount, loadCount, averageLoadMillis, maxLoadMillis);
+        }
+    }
+}
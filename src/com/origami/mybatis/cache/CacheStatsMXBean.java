@@ -0,0 +1,54 @@
+package com.origami.mybatis.cache;
+
+/**
+ * 缓存统计的JMX接口，每个缓存区域和每条语句各注册一个
+ */
+public interface CacheStatsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * 命中空结果（null、空集合、空Map）的次数，已计入命中次数
+     */
+    long getNegativeHitCount();
+
+    /**
+     * 命中率，没有请求时为0
+     */
+    double getHitRatio();
+
+    long getPutCount();
+
+    /**
+     * 超过条目数上限被淘汰的次数
+     */
+    long getSizeEvictionCount();
+
+    /**
+     * 超过字节容量被淘汰的次数
+     */
+    long getCapacityEvictionCount();
+
+    long getExpirationCount();
+
+    /**
+     * 写操作或手动清理移除的条目数
+     */
+    long getInvalidationCount();
+
+    /**
+     * 缓存未命中后查询数据库的次数
+     */
+    long getLoadCount();
+
+    double getAverageLoadMillis();
+
+    double getMaxLoadMillis();
+
+    /**
+     * 清零所有计数
+     */
+    void reset();
+}
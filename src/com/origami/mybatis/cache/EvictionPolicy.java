@@ -0,0 +1,17 @@
+package com.origami.mybatis.cache;
+
+/**
+ * 缓存淘汰策略
+ */
+public enum EvictionPolicy {
+
+    /**
+     * 最近最少使用：命中时刷新访问顺序
+     */
+    LRU,
+
+    /**
+     * 先进先出：按写入顺序淘汰，命中不改变顺序
+     */
+    FIFO
+}
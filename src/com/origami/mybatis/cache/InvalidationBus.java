@@ -0,0 +1,26 @@
+package com.origami.mybatis.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * 缓存失效总线，在多个节点（JVM）之间广播写操作引起的缓存清理
+ * 节点本地的缓存清理照常同步执行，总线只负责通知其他节点；
+ * 实现可以在短时间窗口内合并、去重消息。订阅方需自行忽略本节点发出的消息。
+ */
+public interface InvalidationBus {
+
+    /**
+     * 广播失效消息，不得阻塞或抛出异常影响写操作
+     */
+    void publish(InvalidationMessage message);
+
+    /**
+     * 订阅失效消息
+     */
+    void subscribe(Consumer<InvalidationMessage> listener);
+
+    /**
+     * 关闭总线，释放线程和网络资源
+     */
+    void close();
+}
@@ -0,0 +1,66 @@
+package com.origami.mybatis.cache;
+
+import java.util.Objects;
+
+/**
+ * 缓存失效消息，由执行写操作的节点广播给其他节点
+ * table 为null表示清空所有缓存；key 为null表示按整表清理，否则按主键清理（规范化后的主键文本）
+ */
+public final class InvalidationMessage {
+
+    private final String origin;
+    private final String table;
+    private final String key;
+
+    public InvalidationMessage(String origin, String table, String key) {
+        this.origin = origin;
+        this.table = table;
+        this.key = key;
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public static InvalidationMessage all(String origin) {
+        return new InvalidationMessage(origin, null, null);
+    }
+
+    /**
+     * 发出消息的节点ID
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isClearAll() {
+        return table == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InvalidationMessage)) return false;
+        InvalidationMessage other = (InvalidationMessage) o;
+        return Objects.equals(origin, other.origin)
+                && Objects.equals(table, other.table)
+                && Objects.equals(key, other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(origin, table, key);
+    }
+
+    @Override
+    public String toString() {
+        return isClearAll() ? "ALL" : key == null ? table : table + "#" + key;
+    }
+}
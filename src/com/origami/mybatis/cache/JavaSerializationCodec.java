@@ -0,0 +1,17 @@
+package com.origami.mybatis.cache;
+
+/**
+ * 基于JDK序列化的编解码器，兼容所有实现了Serializable的对象
+ */
+public class JavaSerializationCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return SerializationUtil.serialize(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        return SerializationUtil.deserialize(bytes);
+    }
+}
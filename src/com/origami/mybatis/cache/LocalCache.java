@@ -0,0 +1,58 @@
+package com.origami.mybatis.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一级缓存，每个SqlSession独有
+ * SqlSession只在单个线程中使用，因此不加锁，基于访问顺序的LinkedHashMap实现，
+ * 超过容量时淘汰最久未访问的条目。会话执行写操作、提交、回滚或关闭时清空，
+ * 只影响本会话，不影响其他会话和二级缓存。
+ */
+public class LocalCache implements Cache {
+
+    private final int maxSize;
+    private final LinkedHashMap<CacheKey, Object> entries;
+
+    public LocalCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<CacheKey, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Object> eldest) {
+                return size() > LocalCache.this.maxSize;
+            }
+        };
+    }
+
+    @Override
+    public void put(CacheKey key, Object value) {
+        if (maxSize > 0) {
+            entries.put(key, value);
+        }
+    }
+
+    @Override
+    public Object get(CacheKey key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public boolean containsKey(CacheKey key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public void remove(CacheKey key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+}
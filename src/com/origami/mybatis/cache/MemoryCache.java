@@ -1,227 +1,496 @@
 package com.origami.mybatis.cache;
 
 import java.io.Serializable;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 内存二级缓存实现
- * 支持LRU淘汰策略和过期时间
+ * 支持LRU淘汰策略和过期时间，按条目数和估算字节数双重限制容量；
+ * 配置 {@link RefreshPolicy} 后支持TTL抖动、临近过期的后台刷新以及过期宽限期内返回旧值
+ *
+ * 数据结构：
+ * 1. ConcurrentHashMap 存放条目，命中路径无锁读取
+ * 2. 条目内嵌的双向链表维护访问顺序（LRU）或写入顺序（FIFO），移动和删除都是O(1)
+ * 3. 分层时间轮（{@link TimerWheel}）管理过期时间，过期条目逐个O(1)移除，不扫描整个缓存
+ * 链表和时间轮由一把锁保护；写操作时推进时间轮，读操作只在能立即拿到锁时调整访问顺序并推进时间轮，
+ * 竞争激烈时放弃本次调整，读取方永不等待。
  */
 public class MemoryCache implements Cache {
-    
+
     private final String namespace;
     private final int maxSize; // 最大缓存条目数
     private final long expireTimeMs; // 过期时间(毫秒)
-    
+    private final long maxBytes; // 最大占用字节数，<=0 表示不限制
+    private final long maxEntryBytes; // 单个条目最大字节数，超过则不缓存，<=0 表示不限制
+    private final EvictionPolicy evictionPolicy; // 淘汰策略
+    private volatile RefreshPolicy refreshPolicy; // 过期与刷新策略，null 表示到期即失效
+    private volatile RemovalListener removalListener; // 淘汰、过期时的回调
+    private volatile long negativeTtlMs; // 后台刷新得到空结果时的过期时间，<=0 表示不缓存空结果
+
+    // 统计计数
+    private final CacheStats stats = new CacheStats();
+
+    // 当前缓存占用的估算字节数
+    private final AtomicLong currentBytes = new AtomicLong(0);
+
     // 缓存数据存储
-    private final ConcurrentHashMap<String, CacheEntry> cache;
-    // LRU访问顺序队列
-    private final ConcurrentLinkedQueue<String> accessQueue;
-    // 读写锁
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    
+    private final ConcurrentHashMap<CacheKey, CacheEntry> cache;
+    // 访问顺序链表的哨兵：head.next 最先被淘汰，head.previous 最近访问/写入
+    private final CacheEntry head = new CacheEntry(null, null, 0, 0);
+    // 过期时间轮
+    private final TimerWheel timerWheel = new TimerWheel(System.currentTimeMillis());
+    // 保护访问顺序链表和时间轮
+    private final ReentrantLock lock = new ReentrantLock();
+
     /**
-     * 缓存条目，包含数据和时间戳
+     * 缓存条目，包含数据、过期时间点，以及内嵌的访问顺序链表指针
+     * 时间轮中的到期时间（deadline）为过期时间点加上过期宽限期
      */
-    private static class CacheEntry {
+    private static class CacheEntry extends TimerWheel.Timer {
+        final CacheKey key;
         final Object value;
-        final long createTime;
-        
-        CacheEntry(Object value) {
+        final long weight;
+        final long expireAt; // 0 表示永不过期
+        // 是否已有后台刷新在进行，保证每个条目同一时刻只刷新一次
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+        CacheEntry previous;
+        CacheEntry next;
+
+        CacheEntry(CacheKey key, Object value, long weight, long expireAt) {
+            this.key = key;
             this.value = value;
-            this.createTime = System.currentTimeMillis();
+            this.weight = weight;
+            this.expireAt = expireAt;
+            this.previous = this;
+            this.next = this;
         }
-        
-        boolean isExpired(long expireTimeMs) {
-            return expireTimeMs > 0 && 
-                   (System.currentTimeMillis() - createTime) > expireTimeMs;
+
+        /**
+         * 超过过期时间点 graceMs 之后视为过期
+         */
+        boolean isExpired(long now, long graceMs) {
+            return expireAt > 0 && now > expireAt + graceMs;
         }
     }
 
     public MemoryCache(String namespace, int maxSize, long expireTimeMs) {
+        this(namespace, maxSize, expireTimeMs, 0, 0);
+    }
+
+    public MemoryCache(String namespace, int maxSize, long expireTimeMs, long maxBytes, long maxEntryBytes) {
+        this(namespace, maxSize, expireTimeMs, maxBytes, maxEntryBytes, EvictionPolicy.LRU);
+    }
+
+    public MemoryCache(String namespace, int maxSize, long expireTimeMs, long maxBytes, long maxEntryBytes,
+                       EvictionPolicy evictionPolicy) {
         this.namespace = namespace;
+        this.evictionPolicy = evictionPolicy;
         this.maxSize = maxSize;
         this.expireTimeMs = expireTimeMs;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
         this.cache = new ConcurrentHashMap<>(maxSize);
-        this.accessQueue = new ConcurrentLinkedQueue<>();
-        
-        System.out.println("内存二级缓存初始化 - 命名空间: " + namespace + 
-                          ", 最大条目: " + maxSize + ", 过期时间: " + (expireTimeMs/1000) + "秒");
+
+        System.out.println("内存二级缓存初始化 - 命名空间: " + namespace +
+                          ", 最大条目: " + maxSize + ", 淘汰策略: " + evictionPolicy + ", 过期时间: " + (expireTimeMs/1000) + "秒" +
+                          (maxBytes > 0 ? ", 最大占用: " + (maxBytes / 1024) + "KB" : ""));
     }
-    
+
     @Override
-    public void put(String key, Object value) {
-        // 检查对象是否可序列化
+    public void put(CacheKey key, Object value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public void put(CacheKey key, Object value, long ttlMs) {
+        // 检查对象是否可序列化，null 需要由调用方替换为 NullValue
+        if (value == null) {
+            throw new IllegalArgumentException("缓存对象不能为null: " + key);
+        }
         if (!(value instanceof Serializable)) {
             throw new IllegalArgumentException("缓存对象必须实现Serializable接口: " + value.getClass().getName());
         }
-        
-        String fullKey = namespace + ":" + key;
-        
-        lock.writeLock().lock();
+
+        // 在锁外估算条目大小，超过单条上限的结果不进入缓存，不会为一个放不下的条目清空整个缓存
+        long weight = ObjectSizeEstimator.estimate(value);
+        long entryLimit = entryLimit();
+        if (entryLimit > 0 && weight > entryLimit) {
+            System.out.println("内存缓存跳过存储: " + key + " (估算 " + weight + " 字节，超过单条上限 " + entryLimit + " 字节)");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        CacheEntry entry = new CacheEntry(key, value, weight, ttlMs > 0 ? now + ttlMs : expireAt(now));
+
+        lock.lock();
         try {
-            // 检查是否需要淘汰旧数据
-            if (cache.size() >= maxSize) {
-                evictLRU();
+            timerWheel.advance(now, this::onExpired);
+
+            // 覆盖旧值时先扣除旧条目
+            CacheEntry old = cache.get(key);
+            if (old != null) {
+                unlink(old);
             }
-            
+
+            // 按条目数和字节数淘汰旧数据，直到能容纳新条目
+            while (!cache.isEmpty()) {
+                CacheStats.EvictionCause cause = cache.size() >= maxSize ? CacheStats.EvictionCause.SIZE
+                        : maxBytes > 0 && currentBytes.get() + weight > maxBytes ? CacheStats.EvictionCause.CAPACITY : null;
+                if (cause == null || !evictLRU(cause)) {
+                    break;
+                }
+            }
+
             // 存储新数据
-            CacheEntry entry = new CacheEntry(value);
-            cache.put(fullKey, entry);
-            accessQueue.offer(fullKey);
-            
-            System.out.println("内存缓存存储: " + fullKey + " (当前大小: " + cache.size() + ")");
-            
+            link(entry);
+            stats.recordPut();
+
+            System.out.println("内存缓存存储: " + key + " (当前大小: " + cache.size() + ", 占用: " + currentBytes.get() + " 字节)");
+
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
-    
+
     @Override
-    public Object get(String key) {
-        String fullKey = namespace + ":" + key;
-        
-        lock.readLock().lock();
-        try {
-            CacheEntry entry = cache.get(fullKey);
-            
-            if (entry == null) {
-                return null;
+    public Object get(CacheKey key) {
+        return get(key, null);
+    }
+
+    /**
+     * 获取缓存，配置了刷新策略时：
+     * 临近过期的条目返回当前值并在后台用reloader重新加载；
+     * 已过期但仍在宽限期内的条目返回旧值并在后台重新加载，超过宽限期才视为未命中
+     */
+    @Override
+    public Object get(CacheKey key, Callable<Object> reloader) {
+        long now = System.currentTimeMillis();
+
+        CacheEntry entry = cache.get(key);
+        if (entry == null) {
+            stats.recordMiss();
+            return null;
+        }
+
+        // 空结果到期即失效，不返回旧值也不后台刷新
+        RefreshPolicy policy = reloader != null && !NullValue.isNegative(entry.value) ? refreshPolicy : null;
+        long graceMs = policy != null ? policy.getStaleGraceMs() : 0;
+
+        // 检查是否过期（宽限期内的条目仍可返回）
+        if (entry.isExpired(now, graceMs)) {
+            lock.lock();
+            try {
+                if (cache.get(key) == entry) {
+                    unlink(entry);
+                    stats.recordExpiration();
+                    notifyRemoval(key);
+                    System.out.println("内存缓存过期移除: " + key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            stats.recordMiss();
+            return null;
+        }
+
+        // 更新LRU顺序（FIFO按写入顺序淘汰不需要调整）并顺带推进时间轮；锁被占用时跳过
+        if (lock.tryLock()) {
+            try {
+                if (evictionPolicy == EvictionPolicy.LRU && cache.get(key) == entry) {
+                    moveToTail(entry);
+                }
+                timerWheel.advance(now, this::onExpired);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (policy != null && policy.isRefreshEnabled()) {
+            if (entry.isExpired(now, 0)) {
+                System.out.println("内存缓存返回过期数据，后台刷新: " + key);
+                refreshAsync(key, entry, reloader, policy);
+            } else if (policy.shouldRefresh(entry.expireAt, now)) {
+                System.out.println("内存缓存临近过期，后台刷新: " + key);
+                refreshAsync(key, entry, reloader, policy);
             }
-            
-            // 检查是否过期
-            if (entry.isExpired(expireTimeMs)) {
-                // 需要写锁来删除过期数据
-                lock.readLock().unlock();
-                lock.writeLock().lock();
+        }
+
+        stats.recordHit();
+        System.out.println("内存缓存命中: " + key);
+        return entry.value;
+    }
+
+    /**
+     * 提交后台刷新任务，同一条目同一时刻只有一个刷新任务；线程池队列满时放弃本次刷新
+     */
+    private void refreshAsync(CacheKey key, CacheEntry entry, Callable<Object> reloader, RefreshPolicy policy) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            policy.getExecutor().execute(() -> {
                 try {
-                    // 双重检查
-                    entry = cache.get(fullKey);
-                    if (entry != null && entry.isExpired(expireTimeMs)) {
-                        cache.remove(fullKey);
-                        accessQueue.remove(fullKey);
-                        System.out.println("内存缓存过期移除: " + fullKey);
-                        return null;
-                    }
-                } finally {
-                    lock.readLock().lock();
-                    lock.writeLock().unlock();
+                    replace(key, entry, reloader.call());
+                } catch (Exception e) {
+                    // 刷新失败保留旧值，下次读取时重试
+                    entry.refreshing.set(false);
+                    System.out.println("内存缓存后台刷新失败: " + key + " - " + e.getMessage());
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+            System.out.println("刷新队列已满，跳过后台刷新: " + key);
+        }
+    }
+
+    /**
+     * 用刷新结果替换条目，仅当条目仍是刷新开始时的那一个；
+     * 刷新期间条目被写操作清理或被覆盖时丢弃刷新结果，避免旧数据复活
+     */
+    private void replace(CacheKey key, CacheEntry expected, Object value) {
+        boolean cacheable = value instanceof Serializable;
+        long weight = cacheable ? ObjectSizeEstimator.estimate(value) : 0;
+        long entryLimit = entryLimit();
+        if (entryLimit > 0 && weight > entryLimit) {
+            cacheable = false;
+        }
+
+        lock.lock();
+        try {
+            if (cache.get(key) != expected) {
+                System.out.println("内存缓存条目已失效，丢弃刷新结果: " + key);
+                return;
             }
-            
-            if (entry != null) {
-                // 更新LRU顺序
-                accessQueue.remove(fullKey);
-                accessQueue.offer(fullKey);
-                
-                System.out.println("内存缓存命中: " + fullKey);
-                return entry.value;
+            unlink(expected);
+            // 刷新得到空结果（数据已被删除）时与直接写入一样使用空结果的短过期时间
+            boolean negative = NullValue.isNegative(value);
+            if (!cacheable || negative && negativeTtlMs <= 0) {
+                notifyRemoval(key);
+                return;
             }
-            
-            return null;
-            
+            long now = System.currentTimeMillis();
+            link(new CacheEntry(key, value, weight, negative ? now + negativeTtlMs : expireAt(now)));
+            System.out.println("内存缓存后台刷新完成: " + key);
         } finally {
-            lock.readLock().unlock();
+            lock.unlock();
         }
     }
-    
+
+    /**
+     * 单个条目的实际上限：未设置单条上限或单条上限大于总容量时以总容量为上限，<=0 表示不限制
+     */
+    private long entryLimit() {
+        return maxEntryBytes > 0 && (maxBytes <= 0 || maxEntryBytes < maxBytes) ? maxEntryBytes : maxBytes;
+    }
+
+    /**
+     * 计算新条目的过期时间点
+     */
+    private long expireAt(long now) {
+        RefreshPolicy policy = refreshPolicy;
+        if (policy != null) {
+            return policy.expireAt(now, expireTimeMs);
+        }
+        return expireTimeMs > 0 ? now + expireTimeMs : 0;
+    }
+
     @Override
-    public boolean containsKey(String key) {
-        String fullKey = namespace + ":" + key;
-        
-        lock.readLock().lock();
-        try {
-            CacheEntry entry = cache.get(fullKey);
-            return entry != null && !entry.isExpired(expireTimeMs);
-        } finally {
-            lock.readLock().unlock();
+    public void setRemovalListener(RemovalListener removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    private void notifyRemoval(CacheKey key) {
+        RemovalListener listener = removalListener;
+        if (listener != null) {
+            listener.onRemoval(key);
         }
     }
-    
+
+    /**
+     * 设置空结果的过期时间，用于后台刷新得到空结果时；直接写入的空结果由调用方指定过期时间
+     */
+    public void setNegativeTtl(long negativeTtlMs) {
+        this.negativeTtlMs = negativeTtlMs;
+    }
+
+    /**
+     * 设置过期与刷新策略
+     */
+    public void setRefreshPolicy(RefreshPolicy refreshPolicy) {
+        this.refreshPolicy = refreshPolicy;
+    }
+
+    @Override
+    public boolean containsKey(CacheKey key) {
+        CacheEntry entry = cache.get(key);
+        return entry != null && !entry.isExpired(System.currentTimeMillis(), 0);
+    }
+
     @Override
-    public void remove(String key) {
-        String fullKey = namespace + ":" + key;
-        
-        lock.writeLock().lock();
+    public void remove(CacheKey key) {
+        lock.lock();
         try {
-            if (cache.remove(fullKey) != null) {
-                accessQueue.remove(fullKey);
-                System.out.println("内存缓存移除: " + fullKey);
+            CacheEntry removed = cache.get(key);
+            if (removed != null) {
+                unlink(removed);
+                stats.recordInvalidation(1);
+                System.out.println("内存缓存移除: " + key);
             }
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
-    
+
     @Override
     public void clear() {
-        lock.writeLock().lock();
+        lock.lock();
         try {
+            stats.recordInvalidation(cache.size());
             cache.clear();
-            accessQueue.clear();
+            head.next = head;
+            head.previous = head;
+            timerWheel.clear();
+            currentBytes.set(0);
             System.out.println("内存缓存清空 - 命名空间: " + namespace);
         } finally {
-            lock.writeLock().unlock();
+            lock.unlock();
         }
     }
-    
+
+    /**
+     * 当前条目数（近似值，可能包含已过期但尚未被时间轮移除的条目），不加锁
+     */
     @Override
     public int size() {
-        lock.readLock().lock();
+        return cache.size();
+    }
+
+    /**
+     * 推进时间轮，移除所有已过期的条目
+     */
+    public void cleanUp() {
+        lock.lock();
         try {
-            // 清理过期数据后返回实际大小
-            cleanExpired();
-            return cache.size();
+            timerWheel.advance(System.currentTimeMillis(), this::onExpired);
         } finally {
-            lock.readLock().unlock();
+            lock.unlock();
         }
     }
-    
+
     /**
-     * LRU淘汰策略：移除最久未访问的数据
+     * 加入缓存：放入Map、链表尾部和时间轮（调用方持有锁）
      */
-    private void evictLRU() {
-        String oldestKey = accessQueue.poll();
-        if (oldestKey != null) {
-            cache.remove(oldestKey);
-            System.out.println("LRU淘汰: " + oldestKey);
+    private void link(CacheEntry entry) {
+        cache.put(entry.key, entry);
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+        if (entry.expireAt > 0) {
+            RefreshPolicy policy = refreshPolicy;
+            boolean graced = policy != null && !NullValue.isNegative(entry.value);
+            entry.deadline = entry.expireAt + (graced ? policy.getStaleGraceMs() : 0);
+            timerWheel.schedule(entry);
         }
+        currentBytes.addAndGet(entry.weight);
     }
-    
+
     /**
-     * 清理过期数据
+     * 移出缓存：从Map、链表和时间轮中删除（调用方持有锁）
      */
-    private void cleanExpired() {
-        if (expireTimeMs <= 0) return;
-        
-        lock.writeLock().lock();
-        try {
-            cache.entrySet().removeIf(entry -> {
-                if (entry.getValue().isExpired(expireTimeMs)) {
-                    accessQueue.remove(entry.getKey());
-                    System.out.println("清理过期缓存: " + entry.getKey());
-                    return true;
-                }
-                return false;
-            });
-        } finally {
-            lock.writeLock().unlock();
+    private void unlink(CacheEntry entry) {
+        cache.remove(entry.key, entry);
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = entry;
+        entry.next = entry;
+        timerWheel.deschedule(entry);
+        currentBytes.addAndGet(-entry.weight);
+    }
+
+    private void moveToTail(CacheEntry entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+    }
+
+    /**
+     * 时间轮回调：条目已到期（调用方持有锁）
+     */
+    private void onExpired(TimerWheel.Timer timer) {
+        CacheEntry entry = (CacheEntry) timer;
+        if (cache.get(entry.key) == entry) {
+            unlink(entry);
+            stats.recordExpiration();
+            notifyRemoval(entry.key);
+            System.out.println("清理过期缓存: " + entry.key);
+        }
+    }
+
+    /**
+     * 淘汰链表头部的数据：LRU为最久未访问，FIFO为最早写入
+     * @return 是否淘汰了数据
+     */
+    private boolean evictLRU(CacheStats.EvictionCause cause) {
+        CacheEntry eldest = head.next;
+        if (eldest == head) {
+            return false;
+        }
+        unlink(eldest);
+        stats.recordEviction(cause);
+        notifyRemoval(eldest.key);
+        System.out.println("LRU淘汰: " + eldest.key + " (释放 " + eldest.weight + " 字节)");
+        return true;
+    }
+
+    /**
+     * 条目遍历回调
+     */
+    public interface EntryVisitor {
+        /**
+         * @param expireAt 过期时间点，0 表示永不过期
+         */
+        void visit(CacheKey key, Object value, long expireAt);
+    }
+
+    /**
+     * 遍历所有未过期的条目（用于生成缓存快照）
+     */
+    public void forEachEntry(EntryVisitor visitor) {
+        long now = System.currentTimeMillis();
+        for (CacheEntry entry : cache.values()) {
+            if (!entry.isExpired(now, 0)) {
+                visitor.visit(entry.key, entry.value, entry.expireAt);
+            }
         }
     }
-    
+
     /**
      * 获取缓存统计信息
      */
     public String getStats() {
-        lock.readLock().lock();
-        try {
-            return String.format("命名空间: %s, 当前大小: %d/%d, 过期时间: %d秒", 
-                            namespace, cache.size(), maxSize, expireTimeMs/1000);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return String.format("命名空间: %s, 当前大小: %d/%d, 占用字节: %d/%s, 过期时间: %d秒",
+                        namespace, cache.size(), maxSize, currentBytes.get(),
+                        maxBytes > 0 ? String.valueOf(maxBytes) : "不限", expireTimeMs/1000);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return stats;
+    }
+
+    /**
+     * 获取当前缓存占用的估算字节数
+     */
+    public long getCurrentBytes() {
+        return currentBytes.get();
     }
 }
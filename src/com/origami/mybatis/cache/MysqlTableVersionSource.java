@@ -0,0 +1,72 @@
+package com.origami.mybatis.cache;
+
+import com.origami.mybatis.config.Configuration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 information_schema.tables.UPDATE_TIME 的表版本来源（MySQL）
+ * MySQL 8 默认把表统计信息缓存 information_schema_stats_expiry（默认一天）秒，查询前在会话上临时设为0读取实时值，
+ * 查完恢复默认值；MySQL 5.7 没有这个变量，本身读的就是实时值。
+ * UPDATE_TIME 只精确到秒：与查询时刻在同一秒内修改过的表视为版本未知，否则同一秒内晚于快照的写操作无法区分。
+ * UPDATE_TIME 为空（如InnoDB重启后尚未写入过的表）时同样视为版本未知，对应的快照缓存会被丢弃。
+ * 需要精确版本时可以由应用维护版本表，实现 {@link TableVersionSource} 传给
+ * {@link com.origami.mybatis.config.ConfigurationBuilder#cacheSnapshot(String, TableVersionSource)}。
+ */
+public class MysqlTableVersionSource implements TableVersionSource {
+
+    private static final String SQL =
+            "select table_name, update_time, now() from information_schema.tables where table_schema = database()";
+
+    private final Configuration configuration;
+
+    public MysqlTableVersionSource(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public Map<String, Long> getVersions(Set<String> tables) {
+        Map<String, Long> versions = new HashMap<>();
+        try (Connection connection = configuration.getConnection()) {
+            boolean expirySet = setStatsExpiry(connection, "0");
+            try (PreparedStatement statement = connection.prepareStatement(SQL);
+                 ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String table = SqlMetadata.normalizeTableName(rs.getString(1));
+                    Timestamp updateTime = rs.getTimestamp(2);
+                    Timestamp now = rs.getTimestamp(3);
+                    if (tables.contains(table) && updateTime != null && updateTime.before(now)) {
+                        versions.put(table, updateTime.getTime());
+                    }
+                }
+            } finally {
+                if (expirySet) {
+                    setStatsExpiry(connection, "default");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("查询表版本失败: " + e.getMessage());
+        }
+        return versions;
+    }
+
+    /**
+     * 设置会话的统计信息缓存时间，MySQL 8 之前的版本没有这个变量，返回false
+     */
+    private static boolean setStatsExpiry(Connection connection, String value) {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("set session information_schema_stats_expiry = " + value);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
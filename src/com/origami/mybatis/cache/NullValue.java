@@ -0,0 +1,53 @@
+package com.origami.mybatis.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 查询结果为null时存入缓存的占位值
+ * 缓存中不能直接存放null（无法区分"未缓存"和"查询结果为空"），
+ * 查不到数据的查询以该占位值缓存，命中后还原为null，不必每次都查询数据库。
+ * 反序列化后仍是同一个实例，可以用 == 判断。
+ */
+public final class NullValue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final NullValue INSTANCE = new NullValue();
+
+    private NullValue() {
+    }
+
+    /**
+     * 存入缓存前调用：null 替换为占位值
+     */
+    public static Object wrap(Object value) {
+        return value == null ? INSTANCE : value;
+    }
+
+    /**
+     * 从缓存取出后调用：占位值还原为 null
+     */
+    public static Object unwrap(Object value) {
+        return value == INSTANCE ? null : value;
+    }
+
+    /**
+     * 是否为空结果（占位值、空集合或空Map），空结果使用单独的短过期时间
+     */
+    public static boolean isNegative(Object value) {
+        return value == INSTANCE
+                || value instanceof Collection && ((Collection<?>) value).isEmpty()
+                || value instanceof Map && ((Map<?, ?>) value).isEmpty();
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "NullValue";
+    }
+}
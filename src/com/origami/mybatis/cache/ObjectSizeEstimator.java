@@ -0,0 +1,192 @@
+package com.origami.mybatis.cache;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 对象内存占用估算器，用于二级缓存按字节权重淘汰
+ * 按64位JVM + 压缩指针估算：对象头12字节，引用4字节，按8字节对齐
+ * 估算的是"保留大小"的近似值：对象自身浅大小 + 集合/数组/字段引用到的元素大小
+ */
+public final class ObjectSizeEstimator {
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    // 集合元素的遍历深度上限，防止异常的深层对象图拖慢put
+    private static final int MAX_DEPTH = 8;
+
+    // 每个类的布局（浅大小 + 引用字段），只反射一次
+    private static final ConcurrentHashMap<Class<?>, ClassLayout> LAYOUTS = new ConcurrentHashMap<>();
+
+    private ObjectSizeEstimator() {
+    }
+
+    /**
+     * 类布局：浅大小和需要继续遍历的引用字段
+     */
+    private static class ClassLayout {
+        final long shallowSize;
+        final Field[] referenceFields;
+
+        ClassLayout(long shallowSize, Field[] referenceFields) {
+            this.shallowSize = shallowSize;
+            this.referenceFields = referenceFields;
+        }
+    }
+
+    /**
+     * 估算对象图的保留大小（字节）
+     */
+    public static long estimate(Object obj) {
+        if (obj == null) {
+            return 0;
+        }
+        return estimate(obj, new IdentityHashMap<>(), 0);
+    }
+
+    private static long estimate(Object obj, IdentityHashMap<Object, Boolean> visited, int depth) {
+        if (obj == null || visited.put(obj, Boolean.TRUE) != null) {
+            return 0;
+        }
+        Class<?> clazz = obj.getClass();
+
+        // 常见的不可变值类型直接按固定布局计算
+        if (obj instanceof String) {
+            return align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + ((String) obj).length() * 2L);
+        }
+        if (obj instanceof Integer || obj instanceof Float || obj instanceof Short
+                || obj instanceof Byte || obj instanceof Character || obj instanceof Boolean) {
+            return 16;
+        }
+        if (obj instanceof Long || obj instanceof Double) {
+            return 24;
+        }
+        if (obj instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) obj;
+            // BigDecimal本身40字节，超过long范围时还持有BigInteger
+            return 40 + (decimal.precision() > 18 ? estimateBigInteger(decimal.unscaledValue()) : 0);
+        }
+        if (obj instanceof BigInteger) {
+            return estimateBigInteger((BigInteger) obj);
+        }
+        if (obj instanceof java.util.Date) {
+            return 24;
+        }
+        if (clazz.isArray()) {
+            return estimateArray(obj, clazz, visited, depth);
+        }
+        if (depth >= MAX_DEPTH) {
+            return align(OBJECT_HEADER);
+        }
+        if (obj instanceof Collection) {
+            Collection<?> collection = (Collection<?>) obj;
+            // 外壳 + 底层引用数组
+            long size = align(OBJECT_HEADER + 16) + align(ARRAY_HEADER + (long) collection.size() * REFERENCE);
+            for (Object element : collection) {
+                size += estimate(element, visited, depth + 1);
+            }
+            return size;
+        }
+        if (obj instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) obj;
+            // 外壳 + 桶数组 + 每个Node(hash/key/value/next)
+            long size = align(OBJECT_HEADER + 32) + align(ARRAY_HEADER + (long) map.size() * 2 * REFERENCE)
+                    + (long) map.size() * align(OBJECT_HEADER + 4 + 3 * REFERENCE);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += estimate(entry.getKey(), visited, depth + 1);
+                size += estimate(entry.getValue(), visited, depth + 1);
+            }
+            return size;
+        }
+
+        // JDK内部类型无法反射访问字段（JDK 9+模块限制），只计算一个保守的浅大小
+        if (isJdkClass(clazz)) {
+            return align(OBJECT_HEADER + 16);
+        }
+
+        ClassLayout layout = LAYOUTS.computeIfAbsent(clazz, ObjectSizeEstimator::buildLayout);
+        long size = layout.shallowSize;
+        for (Field field : layout.referenceFields) {
+            try {
+                size += estimate(field.get(obj), visited, depth + 1);
+            } catch (IllegalAccessException e) {
+                // 字段不可访问时只计算引用本身
+            }
+        }
+        return size;
+    }
+
+    private static long estimateArray(Object array, Class<?> clazz, IdentityHashMap<Object, Boolean> visited, int depth) {
+        int length = Array.getLength(array);
+        Class<?> componentType = clazz.getComponentType();
+        if (componentType.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) length * primitiveSize(componentType));
+        }
+        long size = align(ARRAY_HEADER + (long) length * REFERENCE);
+        if (depth < MAX_DEPTH) {
+            for (int i = 0; i < length; i++) {
+                size += estimate(Array.get(array, i), visited, depth + 1);
+            }
+        }
+        return size;
+    }
+
+    private static long estimateBigInteger(BigInteger value) {
+        return 40 + align(ARRAY_HEADER + ((value.bitLength() + 31) / 32) * 4L);
+    }
+
+    /**
+     * 反射计算类的浅大小，并收集引用类型字段
+     */
+    private static ClassLayout buildLayout(Class<?> clazz) {
+        long fieldsSize = 0;
+        List<Field> references = new ArrayList<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                Class<?> type = field.getType();
+                if (type.isPrimitive()) {
+                    fieldsSize += primitiveSize(type);
+                } else {
+                    fieldsSize += REFERENCE;
+                    try {
+                        field.setAccessible(true);
+                        references.add(field);
+                    } catch (RuntimeException e) {
+                        // 不可访问的字段只计算引用大小
+                    }
+                }
+            }
+        }
+        return new ClassLayout(align(OBJECT_HEADER + fieldsSize), references.toArray(new Field[0]));
+    }
+
+    private static boolean isJdkClass(Class<?> clazz) {
+        String name = clazz.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.") || name.startsWith("jdk.");
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
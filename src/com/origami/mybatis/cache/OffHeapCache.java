@@ -0,0 +1,545 @@
+package com.origami.mybatis.cache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 堆外二级缓存实现
+ * 缓存值序列化后存放在直接内存（DirectByteBuffer）或内存映射文件的slab中，
+ * 堆上只保留 key -> (slab, offset, length) 的索引，读取时再反序列化。
+ *
+ * 空间管理参考memcached的slab分配：
+ * 1. 总容量切分为固定大小的slab页，页在首次需要时分配给某个大小等级(size class)
+ * 2. 每个slab页维护自己的空闲chunk栈，每个大小等级记录还有空闲chunk的页，删除/过期/淘汰的chunk直接复用
+ * 3. 每个大小等级维护一条LRU链表，某等级既没有空闲chunk也分配不到新页时，淘汰该等级链表头部的条目，O(1)
+ * 4. 该等级没有任何条目可淘汰时，回收最久未访问条目所在的整页并重新切分给该等级，
+ *    只遍历该页的chunk，不扫描整个索引
+ */
+public class OffHeapCache implements BinaryCache {
+
+    private static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024; // 4MB
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final double GROWTH_FACTOR = 1.25;
+
+    private final String namespace;
+    private final long capacityBytes;
+    private final long expireTimeMs;
+    private final int slabSize;
+    private final CacheCodec codec;
+
+    // slab页，未分配的页为null
+    private final ByteBuffer[] slabs;
+    private int allocatedSlabs = 0;
+    // 每个slab页当前归属的大小等级
+    private final int[] slabClasses;
+    // 每个slab页的条目（下标为 偏移/chunk大小），空闲chunk为null
+    private final Slot[][] slabSlots;
+    // 每个slab页的空闲chunk偏移（栈）及栈中个数
+    private final int[][] slabFreeOffsets;
+    private final int[] slabFreeCounts;
+    private final RandomAccessFile mappedFile;
+    private final FileChannel mappedChannel;
+
+    // 大小等级；每个等级还有空闲chunk的slab页，以及按访问顺序排列的条目链表（哨兵，head.next 最久未访问）
+    private final int[] chunkSizes;
+    private final List<ArrayDeque<Integer>> freeSlabs;
+    private final Slot[] lruHeads;
+
+    // 堆上索引
+    private final Map<CacheKey, Slot> index = new HashMap<>(256);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long usedBytes = 0;
+    // 访问序号，用于比较不同等级链表头部条目的新旧
+    private long accessClock = 0;
+    private boolean closed = false;
+
+    // 统计计数
+    private final CacheStats stats = new CacheStats();
+
+    // 淘汰、过期时的回调
+    private volatile RemovalListener removalListener;
+
+    /**
+     * 条目在堆外的位置，同时是所在等级LRU链表的节点
+     */
+    private static class Slot {
+        final CacheKey key;
+        final int slab;
+        final int offset;
+        final int length;
+        final int sizeClass;
+        final long expireAt;
+        long accessedAt;
+        Slot previous;
+        Slot next;
+
+        Slot(CacheKey key, int slab, int offset, int length, int sizeClass, long expireAt) {
+            this.key = key;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.sizeClass = sizeClass;
+            this.expireAt = expireAt;
+            this.previous = this;
+            this.next = this;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt > 0 && now > expireAt;
+        }
+    }
+
+    /**
+     * 使用直接内存作为存储
+     */
+    public OffHeapCache(String namespace, long capacityBytes, long expireTimeMs) {
+        this(namespace, capacityBytes, expireTimeMs, null, new BinaryCacheCodec());
+    }
+
+    /**
+     * @param mappedFile 内存映射文件路径，为null时使用直接内存
+     * @param codec 值的编解码器
+     */
+    public OffHeapCache(String namespace, long capacityBytes, long expireTimeMs, String mappedFile, CacheCodec codec) {
+        this.namespace = namespace;
+        this.codec = codec;
+        this.expireTimeMs = expireTimeMs;
+        this.slabSize = (int) Math.min(DEFAULT_SLAB_SIZE, Math.max(capacityBytes, MIN_CHUNK_SIZE));
+        this.slabs = new ByteBuffer[(int) Math.max(1, capacityBytes / slabSize)];
+        this.capacityBytes = (long) slabs.length * slabSize;
+        this.slabClasses = new int[slabs.length];
+        this.slabSlots = new Slot[slabs.length][];
+        this.slabFreeOffsets = new int[slabs.length][];
+        this.slabFreeCounts = new int[slabs.length];
+
+        // 生成大小等级：64, 80, 100 ... 直到slab大小
+        List<Integer> sizes = new ArrayList<>();
+        for (double size = MIN_CHUNK_SIZE; size < slabSize; size *= GROWTH_FACTOR) {
+            sizes.add(((int) size + 7) & ~7);
+        }
+        sizes.add(slabSize);
+        this.chunkSizes = new int[sizes.size()];
+        this.freeSlabs = new ArrayList<>(sizes.size());
+        this.lruHeads = new Slot[sizes.size()];
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkSizes[i] = sizes.get(i);
+            freeSlabs.add(new ArrayDeque<>());
+            lruHeads[i] = new Slot(null, -1, 0, 0, i, 0);
+        }
+
+        if (mappedFile != null) {
+            try {
+                this.mappedFile = new RandomAccessFile(mappedFile, "rw");
+            } catch (IOException e) {
+                throw new RuntimeException("堆外缓存映射文件打开失败: " + mappedFile, e);
+            }
+            this.mappedChannel = this.mappedFile.getChannel();
+        } else {
+            this.mappedFile = null;
+            this.mappedChannel = null;
+        }
+
+        System.out.println("堆外二级缓存初始化 - 命名空间: " + namespace + ", 容量: " + (this.capacityBytes / 1024) + "KB" +
+                ", slab: " + slabs.length + " x " + (slabSize / 1024) + "KB, 过期时间: " + (expireTimeMs / 1000) + "秒" +
+                (mappedFile != null ? ", 映射文件: " + mappedFile : ""));
+    }
+
+    @Override
+    public void put(CacheKey key, Object value) {
+        put(key, value, 0);
+    }
+
+    @Override
+    public void put(CacheKey key, Object value, long ttlMs) {
+        // 编码在锁外完成
+        byte[] bytes = codec.encode(value);
+        if (bytes == null) {
+            return;
+        }
+        putBytes(key, bytes, ttlMs);
+    }
+
+    @Override
+    public void putBytes(CacheKey key, byte[] bytes, long ttlMs) {
+        int sizeClass = sizeClassOf(bytes.length);
+        if (sizeClass < 0) {
+            System.out.println("堆外缓存跳过存储: " + key + " (" + bytes.length + " 字节，超过slab大小)");
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Slot old = index.remove(key);
+            if (old != null) {
+                release(old);
+            }
+
+            long chunk = allocate(sizeClass);
+            if (chunk < 0) {
+                System.out.println("堆外缓存空间不足，跳过存储: " + key);
+                return;
+            }
+
+            int slab = (int) (chunk >>> 32);
+            int offset = (int) chunk;
+            ByteBuffer buffer = slabs[slab].duplicate();
+            buffer.position(offset);
+            buffer.put(bytes);
+
+            long ttl = ttlMs > 0 ? ttlMs : expireTimeMs;
+            long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+            Slot slot = new Slot(key, slab, offset, bytes.length, sizeClass, expireAt);
+            index.put(key, slot);
+            slabSlots[slab][offset / chunkSizes[sizeClass]] = slot;
+            linkLast(slot);
+            usedBytes += chunkSizes[sizeClass];
+            stats.recordPut();
+
+            System.out.println("堆外缓存存储: " + key + " (" + bytes.length + " 字节, 当前大小: " + index.size() + ")");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object get(CacheKey key) {
+        byte[] bytes = getBytes(key);
+        // 解码在锁外完成
+        return bytes != null ? codec.decode(bytes) : null;
+    }
+
+    @Override
+    public CacheCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * 读取序列化后的字节
+     */
+    public byte[] getBytes(CacheKey key) {
+        lock.lock();
+        try {
+            Slot slot = index.get(key);
+            if (slot == null) {
+                stats.recordMiss();
+                return null;
+            }
+            if (slot.isExpired(System.currentTimeMillis())) {
+                index.remove(key);
+                release(slot);
+                stats.recordExpiration();
+                stats.recordMiss();
+                notifyRemoval(key);
+                System.out.println("堆外缓存过期移除: " + key);
+                return null;
+            }
+
+            byte[] bytes = new byte[slot.length];
+            ByteBuffer buffer = slabs[slot.slab].duplicate();
+            buffer.position(slot.offset);
+            buffer.get(bytes);
+            unlink(slot);
+            linkLast(slot);
+            stats.recordHit();
+            System.out.println("堆外缓存命中: " + key);
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(CacheKey key) {
+        lock.lock();
+        try {
+            Slot slot = index.get(key);
+            return slot != null && !slot.isExpired(System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(CacheKey key) {
+        lock.lock();
+        try {
+            Slot slot = index.remove(key);
+            if (slot != null) {
+                release(slot);
+                stats.recordInvalidation(1);
+                System.out.println("堆外缓存移除: " + key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            for (Slot slot : index.values()) {
+                release(slot);
+            }
+            stats.recordInvalidation(index.size());
+            index.clear();
+            System.out.println("堆外缓存清空 - 命名空间: " + namespace);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭缓存：清空条目，释放slab页的引用（直接内存随之由GC回收），关闭映射文件
+     * 关闭后写入被忽略，读取都不命中
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            index.clear();
+            for (int i = 0; i < slabs.length; i++) {
+                slabs[i] = null;
+                slabSlots[i] = null;
+                slabFreeOffsets[i] = null;
+                slabFreeCounts[i] = 0;
+            }
+            for (int i = 0; i < chunkSizes.length; i++) {
+                freeSlabs.get(i).clear();
+                lruHeads[i].previous = lruHeads[i];
+                lruHeads[i].next = lruHeads[i];
+            }
+            usedBytes = 0;
+            if (mappedFile != null) {
+                try {
+                    mappedFile.close();
+                } catch (IOException e) {
+                    System.err.println("关闭堆外缓存映射文件失败: " + e.getMessage());
+                }
+            }
+            System.out.println("堆外缓存已关闭 - 命名空间: " + namespace);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setRemovalListener(RemovalListener removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    private void notifyRemoval(CacheKey key) {
+        RemovalListener listener = removalListener;
+        if (listener != null) {
+            listener.onRemoval(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 分配一个chunk：空闲chunk -> 新slab页 -> 淘汰同等级最久未访问的条目 -> 回收整页
+     * @return chunk位置（高32位slab下标，低32位偏移），分配失败返回-1
+     */
+    private long allocate(int sizeClass) {
+        long chunk = pollFree(sizeClass);
+        if (chunk >= 0) {
+            return chunk;
+        }
+        if (allocatedSlabs < slabs.length) {
+            assignSlab(sizeClass);
+            return pollFree(sizeClass);
+        }
+
+        // 同等级链表头部为最久未访问的条目，已过期的计为过期回收
+        Slot eldest = lruHeads[sizeClass].next;
+        if (eldest != lruHeads[sizeClass]) {
+            index.remove(eldest.key);
+            release(eldest);
+            boolean expired = eldest.isExpired(System.currentTimeMillis());
+            if (expired) {
+                stats.recordExpiration();
+            } else {
+                stats.recordEviction(CacheStats.EvictionCause.CAPACITY);
+            }
+            notifyRemoval(eldest.key);
+            System.out.println((expired ? "堆外缓存过期回收: " : "堆外缓存LRU淘汰: ") + eldest.key);
+            return pollFree(sizeClass);
+        }
+
+        // 同等级没有任何条目，回收一整页
+        if (reassignSlab(sizeClass)) {
+            return pollFree(sizeClass);
+        }
+        return -1;
+    }
+
+    /**
+     * 从该等级还有空闲chunk的slab页中取一个chunk，没有时返回-1
+     */
+    private long pollFree(int sizeClass) {
+        ArrayDeque<Integer> candidates = freeSlabs.get(sizeClass);
+        Integer slab = candidates.peek();
+        if (slab == null) {
+            return -1;
+        }
+        int offset = slabFreeOffsets[slab][--slabFreeCounts[slab]];
+        if (slabFreeCounts[slab] == 0) {
+            candidates.poll();
+        }
+        return ((long) slab << 32) | offset;
+    }
+
+    /**
+     * 回收最久未访问条目所在的slab页，清空其中的条目后重新切分给指定等级
+     * 最久未访问的条目是各等级链表头部中访问序号最小的一个
+     */
+    private boolean reassignSlab(int sizeClass) {
+        Slot eldest = null;
+        for (Slot head : lruHeads) {
+            Slot first = head.next;
+            if (first != head && (eldest == null || first.accessedAt < eldest.accessedAt)) {
+                eldest = first;
+            }
+        }
+        if (eldest == null) {
+            return false;
+        }
+        int victim = eldest.slab;
+        int oldClass = slabClasses[victim];
+
+        for (Slot slot : slabSlots[victim]) {
+            if (slot != null) {
+                index.remove(slot.key);
+                unlink(slot);
+                usedBytes -= chunkSizes[oldClass];
+                stats.recordEviction(CacheStats.EvictionCause.CAPACITY);
+                notifyRemoval(slot.key);
+            }
+        }
+        if (slabFreeCounts[victim] > 0) {
+            freeSlabs.get(oldClass).remove(victim);
+        }
+
+        carveSlab(victim, sizeClass);
+        System.out.println("堆外缓存回收slab页: " + victim + " (等级 " + chunkSizes[oldClass] + " -> " + chunkSizes[sizeClass] + " 字节)");
+        return true;
+    }
+
+    /**
+     * 分配一个新的slab页，并切分为指定等级的chunk
+     */
+    private void assignSlab(int sizeClass) {
+        int slab = allocatedSlabs++;
+        if (mappedChannel != null) {
+            try {
+                slabs[slab] = mappedChannel.map(FileChannel.MapMode.READ_WRITE, (long) slab * slabSize, slabSize);
+            } catch (IOException e) {
+                throw new RuntimeException("堆外缓存映射slab失败", e);
+            }
+        } else {
+            slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        }
+
+        carveSlab(slab, sizeClass);
+    }
+
+    /**
+     * 把slab页切分为指定等级的chunk，全部作为空闲chunk（低偏移先分配）
+     */
+    private void carveSlab(int slab, int sizeClass) {
+        slabClasses[slab] = sizeClass;
+        int chunkSize = chunkSizes[sizeClass];
+        int chunks = slabSize / chunkSize;
+        slabSlots[slab] = new Slot[chunks];
+        slabFreeOffsets[slab] = new int[chunks];
+        for (int i = 0; i < chunks; i++) {
+            slabFreeOffsets[slab][i] = (chunks - 1 - i) * chunkSize;
+        }
+        slabFreeCounts[slab] = chunks;
+        freeSlabs.get(sizeClass).offer(slab);
+    }
+
+    /**
+     * 移出LRU链表并归还chunk到所在slab页的空闲栈
+     */
+    private void release(Slot slot) {
+        unlink(slot);
+        int chunkSize = chunkSizes[slot.sizeClass];
+        slabSlots[slot.slab][slot.offset / chunkSize] = null;
+        if (slabFreeCounts[slot.slab]++ == 0) {
+            freeSlabs.get(slot.sizeClass).offer(slot.slab);
+        }
+        slabFreeOffsets[slot.slab][slabFreeCounts[slot.slab] - 1] = slot.offset;
+        usedBytes -= chunkSize;
+    }
+
+    private void linkLast(Slot slot) {
+        Slot head = lruHeads[slot.sizeClass];
+        slot.accessedAt = ++accessClock;
+        slot.previous = head.previous;
+        slot.next = head;
+        head.previous.next = slot;
+        head.previous = slot;
+    }
+
+    private void unlink(Slot slot) {
+        slot.previous.next = slot.next;
+        slot.next.previous = slot.previous;
+        slot.previous = slot;
+        slot.next = slot;
+    }
+
+    /**
+     * 找到能容纳指定长度的最小大小等级
+     */
+    private int sizeClassOf(int length) {
+        for (int i = 0; i < chunkSizes.length; i++) {
+            if (chunkSizes[i] >= length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public String getStats() {
+        lock.lock();
+        try {
+            return String.format("命名空间: %s, 当前大小: %d, 已用: %d/%d 字节, 已分配slab: %d/%d, 过期时间: %d秒",
+                    namespace, index.size(), usedBytes, capacityBytes, allocatedSlabs, slabs.length, expireTimeMs / 1000);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return stats;
+    }
+}
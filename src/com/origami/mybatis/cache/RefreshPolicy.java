@@ -0,0 +1,110 @@
+package com.origami.mybatis.cache;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 二级缓存的过期与刷新策略
+ * 1. 提前刷新（refresh-ahead）：条目在过期前 refreshAheadMs 内被读取时，返回当前值并在后台重新加载
+ * 2. 过期宽限（stale-while-revalidate）：条目过期后 staleGraceMs 内仍返回旧值，同时在后台重新加载
+ * 3. TTL抖动：每个条目的有效期在 [ttl*(1-ttlJitter), ttl] 内随机，避免大量条目同时过期
+ *
+ * 后台加载使用有界线程池，队列满时放弃本次刷新，读取方不受影响。
+ */
+public class RefreshPolicy {
+
+    private final long refreshAheadMs;
+    private final long staleGraceMs;
+    private final double ttlJitter;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param refreshAheadMs 过期前多久开始后台刷新，0 表示不提前刷新
+     * @param staleGraceMs 过期后继续返回旧值的时长，0 表示过期即失效
+     * @param ttlJitter TTL随机缩短的最大比例（0~1），0 表示不抖动
+     * @param refreshThreads 后台刷新线程数
+     * @param queueCapacity 后台刷新队列容量
+     */
+    public RefreshPolicy(long refreshAheadMs, long staleGraceMs, double ttlJitter, int refreshThreads, int queueCapacity) {
+        if (ttlJitter < 0 || ttlJitter >= 1) {
+            throw new IllegalArgumentException("TTL抖动比例必须在[0, 1)之间: " + ttlJitter);
+        }
+        this.refreshAheadMs = Math.max(0, refreshAheadMs);
+        this.staleGraceMs = Math.max(0, staleGraceMs);
+        this.ttlJitter = ttlJitter;
+        if (isRefreshEnabled()) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), r -> {
+                        Thread thread = new Thread(r, "mybatis-cache-refresh-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+        System.out.println("缓存刷新策略 - 提前刷新: " + this.refreshAheadMs + "ms, 过期宽限: " + this.staleGraceMs
+                + "ms, TTL抖动: " + (int) (ttlJitter * 100) + "%");
+    }
+
+    /**
+     * 是否启用后台刷新
+     */
+    public boolean isRefreshEnabled() {
+        return refreshAheadMs > 0 || staleGraceMs > 0;
+    }
+
+    /**
+     * 计算条目的过期时间点，ttlMs<=0 表示永不过期（返回0）
+     */
+    public long expireAt(long now, long ttlMs) {
+        if (ttlMs <= 0) {
+            return 0;
+        }
+        long ttl = ttlMs;
+        if (ttlJitter > 0) {
+            ttl -= (long) (ttlMs * ttlJitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return now + ttl;
+    }
+
+    /**
+     * 未过期的条目是否已进入提前刷新窗口
+     */
+    public boolean shouldRefresh(long expireAt, long now) {
+        return refreshAheadMs > 0 && expireAt > 0 && now >= expireAt - refreshAheadMs;
+    }
+
+    public long getRefreshAheadMs() {
+        return refreshAheadMs;
+    }
+
+    public long getStaleGraceMs() {
+        return staleGraceMs;
+    }
+
+    public double getTtlJitter() {
+        return ttlJitter;
+    }
+
+    /**
+     * 后台刷新线程池，未启用刷新时为null
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 关闭后台刷新线程池
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
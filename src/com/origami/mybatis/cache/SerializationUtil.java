@@ -10,9 +10,9 @@ public class SerializationUtil {
     /**
      * 序列化对象为字节数组
      */
-    public static void serialize(Object obj) {
+    public static byte[] serialize(Object obj) {
         if (obj == null) {
-            return;
+            return null;
         }
         
         // 检查对象是否实现了Serializable接口
@@ -23,6 +23,8 @@ public class SerializationUtil {
         try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
              ObjectOutputStream oos = new ObjectOutputStream(bos)) {
             oos.writeObject(obj);
+            oos.flush();
+            return bos.toByteArray();
         } catch (IOException e) {
             throw new RuntimeException("序列化失败", e);
         }
@@ -0,0 +1,255 @@
+package com.origami.mybatis.cache;
+
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.delete.Delete;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.util.TablesNamesFinder;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL解析元数据
+ * Mapper中的SQL是注解常量，解析结果不会变化，因此每条SQL只解析一次并缓存，
+ * 请求路径上只读取解析结果。
+ *
+ * 除涉及的表外，还分析WHERE子句的失效范围：
+ * 单表SELECT/UPDATE/DELETE的WHERE中以AND连接了"主键 = ?"时，语句只涉及主键对应的一行，
+ * 记录该主键参数的下标，缓存可以按行登记和清理；其余语句按整表处理。
+ * FROM中只能有一个表引用：带JOIN（包括同一张表的自连接）时主键列可能属于另一个表别名，不按行处理。
+ */
+public final class SqlMetadata {
+
+    private static final Pattern SELECT = Pattern.compile("\\bselect\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHERE = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHERE_END = Pattern.compile(
+            "\\b(group\\s+by|order\\s+by|having|limit|for\\s+update)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final String sql;
+    // SQL涉及的所有表（小写、去除schema和引号）
+    private final Set<String> tables;
+    // 主键参数在args中的下标，-1 表示不是按主键定位的语句
+    private final int keyParameterIndex;
+
+    private SqlMetadata(String sql, Set<String> tables, int keyParameterIndex) {
+        this.sql = sql;
+        this.tables = tables;
+        this.keyParameterIndex = keyParameterIndex;
+    }
+
+    /**
+     * 使用JSqlParser解析SQL
+     * @param primaryKeyColumn 主键列名
+     */
+    public static SqlMetadata parse(String sql, String primaryKeyColumn) {
+        if (sql == null || sql.trim().isEmpty()) {
+            return new SqlMetadata(sql, Collections.emptySet(), -1);
+        }
+
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            Set<String> tables = new LinkedHashSet<>();
+            for (String tableName : new TablesNamesFinder().getTables(statement)) {
+                tables.add(normalizeTableName(tableName));
+            }
+
+            int keyParameterIndex = -1;
+            if (tables.size() == 1 && primaryKeyColumn != null && isSingleTableReference(statement)) {
+                keyParameterIndex = findKeyParameter(sql, primaryKeyColumn, statement);
+            }
+
+            System.out.println("解析成功 - 涉及表: " + tables
+                    + (keyParameterIndex >= 0 ? ", 按主键定位(参数" + (keyParameterIndex + 1) + ")" : "") + " - " + sql);
+            return new SqlMetadata(sql, Collections.unmodifiableSet(tables), keyParameterIndex);
+        } catch (JSQLParserException e) {
+            System.out.println("解析失败: " + e.getMessage());
+            return new SqlMetadata(sql, Collections.emptySet(), -1);
+        }
+    }
+
+    /**
+     * 语句的FROM中是否只有一个表引用（没有JOIN、逗号连接和多表DELETE）
+     */
+    private static boolean isSingleTableReference(Statement statement) {
+        if (statement instanceof PlainSelect) {
+            PlainSelect select = (PlainSelect) statement;
+            return select.getFromItem() instanceof Table && isEmpty(select.getJoins());
+        }
+        if (statement instanceof Update) {
+            Update update = (Update) statement;
+            return isEmpty(update.getStartJoins()) && isEmpty(update.getJoins()) && update.getFromItem() == null;
+        }
+        if (statement instanceof Delete) {
+            Delete delete = (Delete) statement;
+            return isEmpty(delete.getJoins()) && isEmpty(delete.getTables()) && isEmpty(delete.getUsingList());
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(List<?> list) {
+        return list == null || list.isEmpty();
+    }
+
+    /**
+     * 分析WHERE子句，找到"主键 = ?"对应的参数下标
+     * 参数下标 = WHERE之前的占位符个数 + WHERE中按从左到右顺序位于主键条件之前的占位符个数
+     */
+    private static int findKeyParameter(String sql, String primaryKeyColumn, Statement statement) throws JSQLParserException {
+        String masked = maskQuoted(sql);
+        // 含子查询的语句参数顺序无法可靠推断，按整表处理
+        int selects = 0;
+        for (Matcher select = SELECT.matcher(masked); select.find(); ) {
+            selects++;
+        }
+        if (selects > (statement instanceof Select ? 1 : 0)) {
+            return -1;
+        }
+
+        Matcher where = WHERE.matcher(masked);
+        if (!where.find()) {
+            return -1;
+        }
+        int whereStart = where.end();
+        Matcher whereEnd = WHERE_END.matcher(masked);
+        int end = whereEnd.find(whereStart) ? whereEnd.start() : masked.length();
+
+        // 修改主键本身的UPDATE会影响两行，按整表处理
+        if (statement instanceof Update && Pattern.compile("\\b" + Pattern.quote(primaryKeyColumn) + "`?\\s*=", Pattern.CASE_INSENSITIVE)
+                .matcher(masked.substring(0, where.start())).find()) {
+            return -1;
+        }
+
+        int[] counter = {countPlaceholders(masked.substring(0, where.start()))};
+        Expression condition = CCJSqlParserUtil.parseCondExpression(sql.substring(whereStart, end));
+        return findKeyParameter(condition, primaryKeyColumn, counter);
+    }
+
+    private static int findKeyParameter(Expression expression, String primaryKeyColumn, int[] counter) {
+        if (expression instanceof AndExpression) {
+            AndExpression and = (AndExpression) expression;
+            int left = findKeyParameter(and.getLeftExpression(), primaryKeyColumn, counter);
+            int right = findKeyParameter(and.getRightExpression(), primaryKeyColumn, counter);
+            return left >= 0 ? left : right;
+        }
+        if (expression instanceof EqualsTo) {
+            EqualsTo equalsTo = (EqualsTo) expression;
+            Expression left = equalsTo.getLeftExpression();
+            Expression right = equalsTo.getRightExpression();
+            if (isKeyColumn(left, primaryKeyColumn) && right instanceof JdbcParameter
+                    || left instanceof JdbcParameter && isKeyColumn(right, primaryKeyColumn)) {
+                return counter[0]++;
+            }
+        }
+        // 其他条件只统计其中的占位符个数
+        expression.accept(new ExpressionVisitorAdapter() {
+            @Override
+            public void visit(JdbcParameter parameter) {
+                counter[0]++;
+            }
+        });
+        return -1;
+    }
+
+    private static boolean isKeyColumn(Expression expression, String primaryKeyColumn) {
+        return expression instanceof Column
+                && normalizeTableName(((Column) expression).getColumnName()).equals(primaryKeyColumn.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 统计占位符个数（调用方已屏蔽引号内的内容）
+     */
+    private static int countPlaceholders(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 把引号内的字符替换为空格，保持长度不变，避免字符串常量中的关键字和问号干扰分析
+     */
+    private static String maskQuoted(String sql) {
+        StringBuilder masked = new StringBuilder(sql.length());
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                masked.append(c == quote ? c : ' ');
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else {
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                masked.append(c);
+            }
+        }
+        return masked.toString();
+    }
+
+    /**
+     * 规范化表名：去掉schema前缀和引号，转为小写
+     */
+    static String normalizeTableName(String tableName) {
+        if (tableName.contains(".")) {
+            tableName = tableName.substring(tableName.lastIndexOf(".") + 1);
+        }
+        return tableName.replaceAll("[`\"'\\[\\]]", "").toLowerCase(Locale.ROOT);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 获取SQL涉及的所有表，解析失败时为空集合
+     */
+    public Set<String> getTables() {
+        return tables;
+    }
+
+    /**
+     * 是否为按主键定位单行的语句
+     */
+    public boolean isKeyed() {
+        return keyParameterIndex >= 0;
+    }
+
+    /**
+     * 获取主键参数在args中的下标，不是按主键定位的语句返回-1
+     */
+    public int getKeyParameterIndex() {
+        return keyParameterIndex;
+    }
+
+    /**
+     * 从调用参数中取出主键值，无法取得时返回null
+     */
+    public Object getKeyValue(Object[] args) {
+        if (keyParameterIndex < 0 || args == null || keyParameterIndex >= args.length) {
+            return null;
+        }
+        return args[keyParameterIndex];
+    }
+}
@@ -0,0 +1,18 @@
+package com.origami.mybatis.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 表版本来源，用于判断缓存快照生成之后表是否被修改过
+ * 版本可以是修改时间戳或单调递增的版本号，只要表被修改后版本一定变化即可。
+ */
+public interface TableVersionSource {
+
+    /**
+     * 查询表的当前版本
+     * @param tables 规范化后的表名（小写、无schema和引号）
+     * @return 表名 -> 版本，无法确定版本的表不放入结果（快照中这些表的缓存会被丢弃）
+     */
+    Map<String, Long> getVersions(Set<String> tables);
+}
@@ -0,0 +1,168 @@
+package com.origami.mybatis.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮，管理缓存条目的过期时间
+ * 四层时间轮的槽位跨度分别约为1秒、1分钟、1小时、3天（均为2的幂毫秒），每层64个槽位。
+ * 条目按距离过期的时长放入对应层的槽位（双向链表，O(1)插入和删除）；
+ * 时间推进时只处理经过的槽位：已到期的条目交给回调移除，未到期的条目下沉到更精细的层。
+ * 每个条目的过期处理是O(1)的，不需要扫描整个缓存。
+ *
+ * 非线程安全，由调用方加锁。时间由调用方传入，不读取系统时钟。
+ */
+public class TimerWheel {
+
+    private static final int BUCKETS = 64;
+    // 各层槽位跨度（毫秒）的位移：1024ms、65536ms、约70分钟、约74小时
+    private static final int[] SHIFTS = {10, 16, 22, 28};
+
+    /**
+     * 时间轮中的定时器，缓存条目继承该类，链表指针内嵌在条目中
+     */
+    public abstract static class Timer {
+        // 到期时间点（毫秒）
+        protected long deadline;
+        Timer previousInWheel;
+        Timer nextInWheel;
+    }
+
+    /**
+     * 槽位链表的哨兵
+     */
+    private static final class Sentinel extends Timer {
+        Sentinel() {
+            previousInWheel = this;
+            nextInWheel = this;
+        }
+    }
+
+    private final Sentinel[][] wheel;
+    // 时间轮当前时间
+    private long time;
+
+    public TimerWheel(long now) {
+        this.time = now;
+        this.wheel = new Sentinel[SHIFTS.length][BUCKETS];
+        for (int i = 0; i < SHIFTS.length; i++) {
+            for (int j = 0; j < BUCKETS; j++) {
+                wheel[i][j] = new Sentinel();
+            }
+        }
+    }
+
+    /**
+     * 按定时器的到期时间放入槽位
+     */
+    public void schedule(Timer timer) {
+        Sentinel sentinel = findBucket(timer.deadline);
+        timer.nextInWheel = sentinel;
+        timer.previousInWheel = sentinel.previousInWheel;
+        sentinel.previousInWheel.nextInWheel = timer;
+        sentinel.previousInWheel = timer;
+    }
+
+    /**
+     * 从时间轮中移除定时器，未调度的定时器忽略
+     */
+    public void deschedule(Timer timer) {
+        if (timer.nextInWheel != null) {
+            timer.previousInWheel.nextInWheel = timer.nextInWheel;
+            timer.nextInWheel.previousInWheel = timer.previousInWheel;
+        }
+        timer.nextInWheel = null;
+        timer.previousInWheel = null;
+    }
+
+    /**
+     * 到期时间变化后重新调度
+     */
+    public void reschedule(Timer timer) {
+        deschedule(timer);
+        schedule(timer);
+    }
+
+    /**
+     * 推进时间轮到now，到期的定时器已从时间轮中移除后交给回调
+     */
+    public void advance(long now, Consumer<Timer> onExpired) {
+        long previous = time;
+        if (now <= previous) {
+            return;
+        }
+        time = now;
+        for (int level = 0; level < SHIFTS.length; level++) {
+            long previousTicks = previous >>> SHIFTS[level];
+            long currentTicks = now >>> SHIFTS[level];
+            if (currentTicks == previousTicks) {
+                // 本层没有经过新的槽位，更高层也不会有
+                break;
+            }
+            expire(level, previousTicks, currentTicks, now, onExpired);
+        }
+    }
+
+    /**
+     * 处理一层中经过的槽位（最多一整圈）
+     */
+    private void expire(int level, long previousTicks, long currentTicks, long now, Consumer<Timer> onExpired) {
+        Sentinel[] buckets = wheel[level];
+        int steps = (int) Math.min(currentTicks - previousTicks + 1, BUCKETS);
+        int start = (int) (previousTicks & (BUCKETS - 1));
+        for (int i = start; i < start + steps; i++) {
+            Sentinel sentinel = buckets[i & (BUCKETS - 1)];
+            // 先摘下整个槽位，再逐个处理：到期的回调移除，未到期的重新调度到更精细的层
+            Timer timer = sentinel.nextInWheel;
+            sentinel.nextInWheel = sentinel;
+            sentinel.previousInWheel = sentinel;
+            while (timer != sentinel) {
+                Timer next = timer.nextInWheel;
+                timer.previousInWheel = null;
+                timer.nextInWheel = null;
+                if (timer.deadline <= now) {
+                    onExpired.accept(timer);
+                } else {
+                    schedule(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * 选择槽位：距离到期越远，放入跨度越大的层
+     */
+    private Sentinel findBucket(long deadline) {
+        // 已经到期的定时器放入当前槽位，下次推进时处理
+        deadline = Math.max(deadline, time);
+        long duration = deadline - time;
+        int last = SHIFTS.length - 1;
+        for (int level = 0; level < last; level++) {
+            if (duration < (1L << SHIFTS[level + 1])) {
+                long ticks = deadline >>> SHIFTS[level];
+                return wheel[level][(int) (ticks & (BUCKETS - 1))];
+            }
+        }
+        long ticks = deadline >>> SHIFTS[last];
+        return wheel[last][(int) (ticks & (BUCKETS - 1))];
+    }
+
+    /**
+     * 清空时间轮
+     */
+    public void clear() {
+        for (Sentinel[] buckets : wheel) {
+            for (Sentinel sentinel : buckets) {
+                Timer timer = sentinel.nextInWheel;
+                while (timer != sentinel) {
+                    Timer next = timer.nextInWheel;
+                    timer.previousInWheel = null;
+                    timer.nextInWheel = null;
+                    timer = next;
+                }
+                sentinel.nextInWheel = sentinel;
+                sentinel.previousInWheel = sentinel;
+            }
+        }
+    }
+}
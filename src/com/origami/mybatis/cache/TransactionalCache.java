@@ -0,0 +1,150 @@
+package com.origami.mybatis.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 事务缓存缓冲区，每个事务一个实例，只由开启事务的会话使用
+ * 事务内的查询结果和写操作引起的缓存清理都先暂存在这里：
+ * 提交时先按顺序执行清理、再写入查询结果，回滚时全部丢弃，
+ * 其他会话永远看不到未提交的数据，事务内也不会提前清掉共享缓存。
+ *
+ * 事务内写过的表，读取时跳过共享缓存（共享缓存中是写之前的数据），
+ * 只使用本事务在写之后暂存的查询结果。
+ *
+ * 暂存结果带有事务开始时的失效时钟：可重复读隔离级别下事务内的读取都来自同一个快照，
+ * 事务期间其他会话修改过的表，对应的结果在提交时不发布（本事务自己写过的表同样不发布）。
+ */
+public class TransactionalCache {
+
+    private final CacheManager delegate;
+
+    // 暂存的查询结果，按写入顺序提交
+    private final Map<CacheKey, StagedPut> stagedPuts = new LinkedHashMap<>();
+
+    // 暂存的写操作（SQL和参数），提交时按顺序清理共享缓存
+    private final List<StagedInvalidation> stagedInvalidations = new ArrayList<>();
+
+    // 事务内写过的表
+    private final Set<String> writtenTables = new HashSet<>();
+
+    // 事务内执行过无法解析表名的写操作，提交时需要清空所有缓存
+    private boolean clearAllOnCommit = false;
+
+    // 事务开始时的失效时钟，早于事务内任何一次读取
+    private final long beginStamp;
+
+    private static class StagedPut {
+        final Object value;
+        final String sql;
+        final Set<String> tables;
+        final long loadStamp;
+
+        StagedPut(Object value, String sql, Set<String> tables, long loadStamp) {
+            this.value = value;
+            this.sql = sql;
+            this.tables = tables;
+            this.loadStamp = loadStamp;
+        }
+    }
+
+    private static class StagedInvalidation {
+        final String sql;
+        final Object[] args;
+
+        StagedInvalidation(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args == null ? null : args.clone();
+        }
+    }
+
+    public TransactionalCache(CacheManager delegate) {
+        this.delegate = delegate;
+        this.beginStamp = delegate.currentStamp();
+    }
+
+    /**
+     * 事务内读取缓存：先读本事务暂存的结果；
+     * 查询涉及的表在本事务内被写过时不读共享缓存
+     */
+    public Object get(CacheKey key, String sql) {
+        StagedPut staged = stagedPuts.get(key);
+        if (staged != null) {
+            System.out.println("事务缓存命中: " + key);
+            return staged.value;
+        }
+        if (isDirty(delegate.getSqlMetadata(sql).getTables())) {
+            System.out.println("查询涉及本事务修改过的表，跳过共享缓存: " + key);
+            return null;
+        }
+        return delegate.get(key);
+    }
+
+    /**
+     * 暂存查询结果，提交后才写入共享缓存
+     * @param loadStamp 查询开始前 {@link CacheManager#currentStamp()} 的值，发布时取它与事务开始时的较小值
+     */
+    public void put(CacheKey key, Object value, String sql, long loadStamp) {
+        stagedPuts.put(key, new StagedPut(value, sql, delegate.getSqlMetadata(sql).getTables(),
+                Math.min(loadStamp, beginStamp)));
+    }
+
+    /**
+     * 暂存写操作引起的缓存清理，并丢弃本事务内涉及这些表的暂存结果
+     */
+    public void invalidate(String sql, Object[] args) {
+        stagedInvalidations.add(new StagedInvalidation(sql, args));
+        Set<String> tables = delegate.getSqlMetadata(sql).getTables();
+        if (tables.isEmpty()) {
+            clearAllOnCommit = true;
+            stagedPuts.clear();
+            return;
+        }
+        writtenTables.addAll(tables);
+        stagedPuts.values().removeIf(staged -> !Collections.disjoint(staged.tables, tables));
+    }
+
+    private boolean isDirty(Set<String> tables) {
+        return clearAllOnCommit || tables.isEmpty() && !writtenTables.isEmpty()
+                || !Collections.disjoint(tables, writtenTables);
+    }
+
+    /**
+     * 事务提交后调用：先清理写操作涉及的共享缓存，再发布暂存的查询结果
+     */
+    public void commit() {
+        if (clearAllOnCommit) {
+            delegate.invalidateAll();
+        } else {
+            for (StagedInvalidation invalidation : stagedInvalidations) {
+                delegate.invalidate(invalidation.sql, invalidation.args);
+            }
+        }
+        for (Map.Entry<CacheKey, StagedPut> entry : stagedPuts.entrySet()) {
+            StagedPut staged = entry.getValue();
+            delegate.putWithTable(entry.getKey(), staged.value, staged.sql, staged.loadStamp);
+        }
+        System.out.println("事务缓存已提交 - 清理操作: " + stagedInvalidations.size() + ", 发布结果: " + stagedPuts.size());
+        reset();
+    }
+
+    /**
+     * 事务回滚后调用：丢弃所有暂存内容
+     */
+    public void rollback() {
+        System.out.println("事务缓存已丢弃 - 清理操作: " + stagedInvalidations.size() + ", 暂存结果: " + stagedPuts.size());
+        reset();
+    }
+
+    private void reset() {
+        stagedPuts.clear();
+        stagedInvalidations.clear();
+        writtenTables.clear();
+        clearAllOnCommit = false;
+    }
+}
@@ -0,0 +1,237 @@
+package com.origami.mybatis.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 基于UDP的失效总线，各节点绑定一个端口，把失效消息发送给配置的所有对端
+ * 发送方在 batchWindowMs 时间窗口内收集消息，去重后合并为尽量少的数据报发送，
+ * 批量写入时不会为每一行发送一个数据报。
+ *
+ * UDP不保证送达，丢失的消息由缓存TTL兜底；在同一台机器上可以用回环地址的不同端口模拟多个节点。
+ */
+public class UdpInvalidationBus implements InvalidationBus {
+
+    private static final int MAGIC = 0x4D594249;
+    // 单个数据报的最大字节数，超过时拆分为多个数据报
+    private static final int MAX_DATAGRAM_BYTES = 8 * 1024;
+    private static final int FLAG_TABLE = 1;
+    private static final int FLAG_KEY = 2;
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private final long batchWindowMs;
+
+    private final List<Consumer<InvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+    // 等待发送的消息
+    private final ConcurrentLinkedQueue<InvalidationMessage> pending = new ConcurrentLinkedQueue<>();
+    // 当前窗口是否已安排发送
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService sender;
+    private final Thread receiver;
+    private volatile boolean closed = false;
+
+    /**
+     * 在回环地址上创建总线，合并窗口10毫秒
+     * @param port 本节点端口
+     * @param peerPorts 其他节点的端口
+     */
+    public UdpInvalidationBus(int port, int... peerPorts) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), loopbackPeers(peerPorts), 10);
+    }
+
+    /**
+     * @param bindAddress 本节点监听地址
+     * @param peers 其他节点地址
+     * @param batchWindowMs 发送合并窗口（毫秒），0 表示立即发送
+     */
+    public UdpInvalidationBus(InetSocketAddress bindAddress, List<InetSocketAddress> peers, long batchWindowMs) {
+        try {
+            this.socket = new DatagramSocket(bindAddress);
+        } catch (SocketException e) {
+            throw new RuntimeException("失效总线端口绑定失败: " + bindAddress, e);
+        }
+        this.peers = new ArrayList<>(peers);
+        this.batchWindowMs = Math.max(0, batchWindowMs);
+        this.sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mybatis-invalidation-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.receiver = new Thread(this::receiveLoop, "mybatis-invalidation-receiver");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+        System.out.println("UDP失效总线已启动 - 监听: " + bindAddress + ", 对端: " + this.peers + ", 合并窗口: " + this.batchWindowMs + "ms");
+    }
+
+    private static List<InetSocketAddress> loopbackPeers(int... ports) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (int port : ports) {
+            peers.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+        return peers;
+    }
+
+    @Override
+    public void publish(InvalidationMessage message) {
+        if (closed || peers.isEmpty()) {
+            return;
+        }
+        pending.offer(message);
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                sender.schedule(this::flush, batchWindowMs, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * 发送当前窗口内收集的消息，相同的消息只发送一次
+     */
+    private void flush() {
+        // 先复位标记再取消息，取走之后新到的消息会安排下一次发送
+        flushScheduled.set(false);
+        Set<InvalidationMessage> batch = new LinkedHashSet<>();
+        InvalidationMessage message;
+        while ((message = pending.poll()) != null) {
+            batch.add(message);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (byte[] datagram : encode(batch)) {
+                for (InetSocketAddress peer : peers) {
+                    socket.send(new DatagramPacket(datagram, datagram.length, peer));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("发送缓存失效消息失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 编码为一个或多个数据报：魔数、消息数、逐条消息（来源、标记、表名、主键）
+     */
+    static List<byte[]> encode(Set<InvalidationMessage> messages) throws IOException {
+        List<byte[]> datagrams = new ArrayList<>();
+        List<byte[]> encoded = new ArrayList<>();
+        int size = 0;
+        for (InvalidationMessage message : messages) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(message.getOrigin());
+            out.writeByte((message.getTable() != null ? FLAG_TABLE : 0) | (message.getKey() != null ? FLAG_KEY : 0));
+            if (message.getTable() != null) {
+                out.writeUTF(message.getTable());
+            }
+            if (message.getKey() != null) {
+                out.writeUTF(message.getKey());
+            }
+            byte[] entry = bytes.toByteArray();
+            if (!encoded.isEmpty() && size + entry.length > MAX_DATAGRAM_BYTES) {
+                datagrams.add(datagram(encoded));
+                encoded.clear();
+                size = 0;
+            }
+            encoded.add(entry);
+            size += entry.length;
+        }
+        if (!encoded.isEmpty()) {
+            datagrams.add(datagram(encoded));
+        }
+        return datagrams;
+    }
+
+    private static byte[] datagram(List<byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(entries.size());
+        for (byte[] entry : entries) {
+            out.write(entry);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<InvalidationMessage> decode(byte[] data, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("不是缓存失效消息");
+        }
+        int count = in.readUnsignedShort();
+        List<InvalidationMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String origin = in.readUTF();
+            int flags = in.readByte();
+            String table = (flags & FLAG_TABLE) != 0 ? in.readUTF() : null;
+            String key = (flags & FLAG_KEY) != 0 ? in.readUTF() : null;
+            messages.add(new InvalidationMessage(origin, table, key));
+        }
+        return messages;
+    }
+
+    private void receiveLoop() {
+        byte[] buffer = new byte[64 * 1024];
+        while (!closed) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                for (InvalidationMessage message : decode(packet.getData(), packet.getLength())) {
+                    for (Consumer<InvalidationMessage> listener : listeners) {
+                        listener.accept(message);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("接收缓存失效消息失败: " + e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                System.err.println("处理缓存失效消息失败: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationMessage> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        // 发送尚未发出的消息后再关闭
+        try {
+            sender.submit(this::flush).get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.err.println("发送剩余缓存失效消息失败: " + e.getMessage());
+        }
+        closed = true;
+        sender.shutdownNow();
+        socket.close();
+        System.out.println("UDP失效总线已关闭");
+    }
+}
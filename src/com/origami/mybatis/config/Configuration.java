@@ -1,6 +1,8 @@
 package com.origami.mybatis.config;
 
+import com.origami.mybatis.cache.CacheKey;
 import com.origami.mybatis.cache.CacheManager;
+import com.origami.mybatis.executor.SingleFlight;
 import com.origami.mybatis.pool.ConnectionPool;
 
 import java.sql.Connection;
@@ -16,6 +18,8 @@ public class Configuration {
     private Properties properties;
     private ConnectionPool connectionPool;
     private CacheManager cacheManager;
+    private SingleFlight<CacheKey> singleFlight;
+    private int localCacheSize = 256;
     private boolean initialized = false;
 
     Configuration() {
@@ -57,6 +61,25 @@ public class Configuration {
                     getIntProperty("jdbc.maxIdleTime", 300),
                     getIntProperty("jdbc.connectionTimeout", 30)
                 );
+                String timeoutMs = properties.getProperty("jdbc.connectionTimeoutMs");
+                if (timeoutMs != null) {
+                    connectionPool.setConnectionTimeoutMs(Long.parseLong(timeoutMs));
+                }
+                connectionPool.setMinIdle(getIntProperty("jdbc.minIdle", getIntProperty("jdbc.initialSize", 5)));
+                connectionPool.setValidation(getLongProperty("jdbc.validationIdleMs", 500),
+                        properties.getProperty("jdbc.testQuery"));
+                connectionPool.setLeakDetectionThreshold(getLongProperty("jdbc.leakDetectionThresholdMs", 0));
+                connectionPool.setMaxLifetime(getLongProperty("jdbc.maxLifetimeMs", 30 * 60 * 1000L));
+                connectionPool.setKeepaliveTime(getLongProperty("jdbc.keepaliveTimeMs", 0));
+                if (Boolean.parseBoolean(properties.getProperty("jdbc.adaptiveSizing"))) {
+                    connectionPool.enableAdaptiveSizing(
+                            getIntProperty("jdbc.adaptiveMinSize", getIntProperty("jdbc.minIdle", getIntProperty("jdbc.initialSize", 5))),
+                            getLongProperty("jdbc.adaptiveSampleMs", 5000),
+                            getLongProperty("jdbc.adaptiveCooldownMs", 30 * 1000L));
+                }
+                if (Boolean.parseBoolean(properties.getProperty("jdbc.jmx"))) {
+                    connectionPool.enableJmx(properties.getProperty("jdbc.poolName", "default"));
+                }
             }
             
             initialized = true;
@@ -73,6 +96,14 @@ public class Configuration {
         return value != null ? Integer.parseInt(value) : defaultValue;
     }
 
+    /**
+     * 获取长整型配置属性
+     */
+    private long getLongProperty(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
     /**
      * 获取数据库连接
      */
@@ -92,6 +123,13 @@ public class Configuration {
         }
     }
 
+    /**
+     * 获取连接池，未配置数据库时为null
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
     /**
      * 获取连接池状态
      */
@@ -113,6 +151,34 @@ public class Configuration {
         return cacheManager;
     }
     
+    /**
+     * 设置查询合并器（内部使用）
+     */
+    void setSingleFlight(SingleFlight<CacheKey> singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+    
+    /**
+     * 获取查询合并器，未启用时返回null
+     */
+    public SingleFlight<CacheKey> getSingleFlight() {
+        return singleFlight;
+    }
+    
+    /**
+     * 设置每个SqlSession一级缓存的最大条目数（内部使用）
+     */
+    void setLocalCacheSize(int localCacheSize) {
+        this.localCacheSize = localCacheSize;
+    }
+    
+    /**
+     * 获取每个SqlSession一级缓存的最大条目数
+     */
+    public int getLocalCacheSize() {
+        return localCacheSize;
+    }
+    
     /**
      * 创建Configuration构建器
      */
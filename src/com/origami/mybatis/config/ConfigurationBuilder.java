@@ -1,7 +1,16 @@
 package com.origami.mybatis.config;
 
+import com.origami.mybatis.cache.BinaryCacheCodec;
+import com.origami.mybatis.cache.CacheCodec;
+import com.origami.mybatis.cache.CacheKey;
 import com.origami.mybatis.cache.CacheManager;
+import com.origami.mybatis.cache.InvalidationBus;
 import com.origami.mybatis.cache.MemoryCache;
+import com.origami.mybatis.cache.MysqlTableVersionSource;
+import com.origami.mybatis.cache.OffHeapCache;
+import com.origami.mybatis.cache.RefreshPolicy;
+import com.origami.mybatis.cache.TableVersionSource;
+import com.origami.mybatis.executor.SingleFlight;
 
 import java.io.InputStream;
 import java.util.Properties;
@@ -16,7 +25,26 @@ public class ConfigurationBuilder {
     private boolean cacheEnabled = true;
     private int cacheMaxSize = 1000;
     private long cacheExpireTimeMs = 30 * 60 * 1000L; // 30分钟
+    private long cacheMaxBytes = 64 * 1024 * 1024L; // 64MB
+    private long cacheMaxEntryBytes = 4 * 1024 * 1024L; // 单条4MB
     private boolean secondLevelCacheEnabled = false;
+    private long offHeapCapacityBytes = 0; // >0 时二级缓存存放在堆外
+    private String offHeapMappedFile;
+    private CacheCodec cacheCodec = new BinaryCacheCodec();
+    private String primaryKeyColumn = "id";
+    private boolean queryCoalescingEnabled = true;
+    private long queryCoalescingTimeoutMs = 30 * 1000L;
+    private long refreshAheadMs = 0;
+    private long staleGraceMs = 0;
+    private int refreshThreads = 2;
+    private int refreshQueueCapacity = 256;
+    private double cacheTtlJitter = 0;
+    private long negativeCacheTtlMs = 30 * 1000L;
+    private int localCacheSize = 256;
+    private InvalidationBus invalidationBus;
+    private String snapshotFile;
+    private TableVersionSource tableVersionSource;
+    private boolean cacheJmxEnabled = false;
     
     /**
      * 从配置文件加载数据库配置
@@ -55,6 +83,81 @@ public class ConfigurationBuilder {
         return this;
     }
     
+    /**
+     * 配置连接池参数
+     * @param minIdle 最少空闲连接数，空闲连接低于该值时后台并行补充，请求线程不必等待建连
+     */
+    public ConfigurationBuilder connectionPool(int initialSize, int minIdle, int maxSize) {
+        connectionPool(initialSize, maxSize);
+        properties.setProperty("jdbc.minIdle", String.valueOf(minIdle));
+        return this;
+    }
+    
+    /**
+     * 设置获取连接的超时时间（毫秒，默认30秒），超时前按到达顺序排队等待
+     */
+    public ConfigurationBuilder connectionTimeout(long connectionTimeoutMs) {
+        properties.setProperty("jdbc.connectionTimeoutMs", String.valueOf(connectionTimeoutMs));
+        return this;
+    }
+    
+    /**
+     * 启用连接泄漏检测：连接借出超过该时长（毫秒）未归还时打印借出位置，0 表示不检测
+     */
+    public ConfigurationBuilder leakDetectionThreshold(long leakDetectionThresholdMs) {
+        properties.setProperty("jdbc.leakDetectionThresholdMs", String.valueOf(leakDetectionThresholdMs));
+        return this;
+    }
+    
+    /**
+     * 配置连接存活时间和保活
+     * @param maxLifetimeMs 连接最长存活时间（默认30分钟），应短于数据库 wait_timeout，到期的连接在空闲时逐个替换，0 表示不限
+     * @param keepaliveTimeMs 空闲超过该时长的连接在后台ping一次（默认0，不保活）
+     */
+    public ConfigurationBuilder connectionLifetime(long maxLifetimeMs, long keepaliveTimeMs) {
+        properties.setProperty("jdbc.maxLifetimeMs", String.valueOf(maxLifetimeMs));
+        properties.setProperty("jdbc.keepaliveTimeMs", String.valueOf(keepaliveTimeMs));
+        return this;
+    }
+    
+    /**
+     * 启用连接池自适应容量：按获取速率 × 平均借出时长估算需要的连接数，在 [minSize, jdbc.maxSize] 内调整连接数上限
+     * @param minSize 最少连接数
+     * @param sampleIntervalMs 采样周期（默认5秒）
+     * @param cooldownMs 调整后至少间隔该时长才能缩容（默认30秒）
+     */
+    public ConfigurationBuilder adaptivePoolSizing(int minSize, long sampleIntervalMs, long cooldownMs) {
+        properties.setProperty("jdbc.adaptiveSizing", "true");
+        properties.setProperty("jdbc.adaptiveMinSize", String.valueOf(minSize));
+        properties.setProperty("jdbc.adaptiveSampleMs", String.valueOf(sampleIntervalMs));
+        properties.setProperty("jdbc.adaptiveCooldownMs", String.valueOf(cooldownMs));
+        return this;
+    }
+    
+    /**
+     * 把连接池统计注册为JMX MBean（com.origami.mybatis:type=ConnectionPool,name=连接池名）
+     * 包括获取连接耗时、借出时长、建立连接耗时的分布，等待线程数和超时次数，并可软驱逐连接
+     */
+    public ConfigurationBuilder enablePoolJmx(String poolName) {
+        properties.setProperty("jdbc.jmx", "true");
+        properties.setProperty("jdbc.poolName", poolName);
+        return this;
+    }
+    
+    /**
+     * 配置连接有效性检查：空闲超过 validationIdleMs 的连接借出前检查一次（默认500毫秒）
+     * @param testQuery 测试查询（如 SELECT 1），null 表示使用驱动的ping
+     */
+    public ConfigurationBuilder connectionValidation(long validationIdleMs, String testQuery) {
+        properties.setProperty("jdbc.validationIdleMs", String.valueOf(validationIdleMs));
+        if (testQuery != null) {
+            properties.setProperty("jdbc.testQuery", testQuery);
+        } else {
+            properties.remove("jdbc.testQuery");
+        }
+        return this;
+    }
+    
     /**
      * 启用内存二级缓存
      */
@@ -73,6 +176,149 @@ public class ConfigurationBuilder {
         return this;
     }
     
+    /**
+     * 配置二级缓存的字节预算
+     * @param maxBytes 缓存总占用上限（估算字节数），<=0 表示只按条目数限制
+     * @param maxEntryBytes 单条结果占用上限，超过的结果不进入二级缓存，<=0 表示不限制
+     */
+    public ConfigurationBuilder cacheMemoryLimit(long maxBytes, long maxEntryBytes) {
+        this.cacheMaxBytes = maxBytes;
+        this.cacheMaxEntryBytes = maxEntryBytes;
+        return this;
+    }
+    
+    /**
+     * 启用堆外二级缓存（直接内存），缓存值序列化后存放在堆外，适合GB级缓存
+     * @param capacityBytes 堆外容量（字节）
+     * @param expireTimeMs 过期时间（毫秒）
+     */
+    public ConfigurationBuilder enableOffHeapCache(long capacityBytes, long expireTimeMs) {
+        this.offHeapCapacityBytes = capacityBytes;
+        this.cacheExpireTimeMs = expireTimeMs;
+        this.secondLevelCacheEnabled = true;
+        return this;
+    }
+    
+    /**
+     * 启用基于内存映射文件的堆外二级缓存
+     * @param mappedFile 映射文件路径
+     */
+    public ConfigurationBuilder enableOffHeapCache(long capacityBytes, long expireTimeMs, String mappedFile) {
+        enableOffHeapCache(capacityBytes, expireTimeMs);
+        this.offHeapMappedFile = mappedFile;
+        return this;
+    }
+    
+    /**
+     * 设置堆外缓存的编解码器，默认使用紧凑二进制格式（无法识别的类型回退到JDK序列化）
+     */
+    public ConfigurationBuilder cacheCodec(CacheCodec cacheCodec) {
+        this.cacheCodec = cacheCodec;
+        return this;
+    }
+    
+    /**
+     * 设置主键列名（默认 id）
+     * 按主键定位的写操作只清理对应行的缓存以及列表/聚合查询缓存
+     */
+    public ConfigurationBuilder primaryKeyColumn(String primaryKeyColumn) {
+        this.primaryKeyColumn = primaryKeyColumn;
+        return this;
+    }
+    
+    /**
+     * 配置相同查询的并发合并（默认启用，等待超时30秒）
+     * 并发执行的相同查询（同一语句、同一参数）只有一个真正访问数据库，其余等待其结果；
+     * 禁用缓存时同样生效
+     */
+    public ConfigurationBuilder queryCoalescing(boolean enabled, long timeoutMs) {
+        this.queryCoalescingEnabled = enabled;
+        this.queryCoalescingTimeoutMs = timeoutMs;
+        return this;
+    }
+    
+    /**
+     * 启用二级缓存的提前刷新和过期宽限（仅内存缓存生效）
+     * @param refreshAheadMs 条目在过期前该时长内被读取时，返回当前值并在后台重新查询
+     * @param staleGraceMs 条目过期后该时长内仍返回旧值，同时在后台重新查询
+     */
+    public ConfigurationBuilder refreshAhead(long refreshAheadMs, long staleGraceMs) {
+        this.refreshAheadMs = refreshAheadMs;
+        this.staleGraceMs = staleGraceMs;
+        return this;
+    }
+    
+    /**
+     * 启用提前刷新并配置后台刷新线程池（默认2个线程，队列容量256，队列满时放弃刷新）
+     */
+    public ConfigurationBuilder refreshAhead(long refreshAheadMs, long staleGraceMs, int threads, int queueCapacity) {
+        refreshAhead(refreshAheadMs, staleGraceMs);
+        this.refreshThreads = threads;
+        this.refreshQueueCapacity = queueCapacity;
+        return this;
+    }
+    
+    /**
+     * 设置TTL抖动比例（0~1），每个条目的有效期在 [ttl*(1-ratio), ttl] 内随机，避免大量条目同时过期
+     */
+    public ConfigurationBuilder cacheTtlJitter(double ratio) {
+        this.cacheTtlJitter = ratio;
+        return this;
+    }
+    
+    /**
+     * 设置空结果（查不到数据、空列表）在二级缓存中的过期时间（默认30秒），0 表示不缓存空结果
+     */
+    public ConfigurationBuilder negativeCacheTtl(long negativeCacheTtlMs) {
+        this.negativeCacheTtlMs = negativeCacheTtlMs;
+        return this;
+    }
+    
+    /**
+     * 设置每个SqlSession一级缓存的最大条目数（默认256），0 表示不使用一级缓存
+     */
+    public ConfigurationBuilder localCacheSize(int localCacheSize) {
+        this.localCacheSize = localCacheSize;
+        return this;
+    }
+    
+    /**
+     * 设置跨节点缓存失效总线（如 UdpInvalidationBus），多个JVM访问同一数据库时，
+     * 一个节点的写操作会清理所有节点的相关缓存，各节点可以使用较长的TTL
+     */
+    public ConfigurationBuilder invalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        return this;
+    }
+    
+    /**
+     * 启用缓存快照：SqlSessionFactory关闭时把二级缓存写入快照文件，下次构建时加载，重启后缓存直接可用
+     * 使用 information_schema.tables.UPDATE_TIME（读取时关闭MySQL 8的统计信息缓存）判断停机期间表是否被修改过，
+     * 被修改过或无法确定的表的缓存不会加载；UPDATE_TIME只精确到秒且数据库重启后清空，需要精确版本时使用自定义版本来源
+     */
+    public ConfigurationBuilder cacheSnapshot(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        return this;
+    }
+    
+    /**
+     * 启用缓存快照并指定表版本来源
+     */
+    public ConfigurationBuilder cacheSnapshot(String snapshotFile, TableVersionSource tableVersionSource) {
+        this.snapshotFile = snapshotFile;
+        this.tableVersionSource = tableVersionSource;
+        return this;
+    }
+    
+    /**
+     * 把缓存统计（每个缓存区域、每条语句）和缓存管理操作注册为JMX MBean
+     * 域名 com.origami.mybatis，可在JConsole等工具中查看命中率并清理区域或表
+     */
+    public ConfigurationBuilder enableCacheJmx() {
+        this.cacheJmxEnabled = true;
+        return this;
+    }
+    
     /**
      * 禁用缓存
      */
@@ -89,21 +335,50 @@ public class ConfigurationBuilder {
         
         // 设置数据库配置
         config.setProperties(properties);
+        config.setLocalCacheSize(localCacheSize);
+        
+        // 初始化查询合并器
+        if (queryCoalescingEnabled) {
+            config.setSingleFlight(new SingleFlight<CacheKey>(queryCoalescingTimeoutMs));
+        }
         
         // 初始化缓存管理器
         if (cacheEnabled) {
             CacheManager cacheManager = new CacheManager();
+            cacheManager.setPrimaryKeyColumn(primaryKeyColumn);
+            cacheManager.setNegativeTtl(negativeCacheTtlMs);
+            if (refreshAheadMs > 0 || staleGraceMs > 0 || cacheTtlJitter > 0) {
+                cacheManager.setRefreshPolicy(new RefreshPolicy(refreshAheadMs, staleGraceMs, cacheTtlJitter,
+                        refreshThreads, refreshQueueCapacity));
+            }
             
-            // 如果启用了二级缓存，配置内存缓存
+            // 如果启用了二级缓存，配置内存缓存或堆外缓存
             if (secondLevelCacheEnabled) {
                 try {
-                    MemoryCache memoryCache = new MemoryCache("mybatis_cache", cacheMaxSize, cacheExpireTimeMs);
-                    cacheManager.setSecondLevelCache(memoryCache);
+                    if (offHeapCapacityBytes > 0) {
+                        cacheManager.setSecondLevelCache(new OffHeapCache("mybatis_cache",
+                                offHeapCapacityBytes, cacheExpireTimeMs, offHeapMappedFile, cacheCodec));
+                    } else {
+                        MemoryCache memoryCache = new MemoryCache("mybatis_cache", cacheMaxSize, cacheExpireTimeMs,
+                                cacheMaxBytes, cacheMaxEntryBytes);
+                        cacheManager.setSecondLevelCache(memoryCache);
+                    }
                 } catch (Exception e) {
-                    System.err.println("内存二级缓存初始化失败: " + e.getMessage());
+                    System.err.println("二级缓存初始化失败: " + e.getMessage());
                 }
             }
             
+            cacheManager.setInvalidationBus(invalidationBus);
+            if (cacheJmxEnabled) {
+                cacheManager.enableJmx();
+            }
+            
+            // 加载上次关闭时保存的缓存快照
+            if (snapshotFile != null && secondLevelCacheEnabled) {
+                cacheManager.setSnapshot(snapshotFile, cacheCodec,
+                        tableVersionSource != null ? tableVersionSource : new MysqlTableVersionSource(config));
+                cacheManager.loadSnapshot();
+            }
             config.setCacheManager(cacheManager);
             System.out.println("缓存管理器初始化 - 启用" + (secondLevelCacheEnabled ? "二级缓存" : "一级缓存"));
         }
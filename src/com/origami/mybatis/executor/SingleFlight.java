@@ -0,0 +1,146 @@
+package com.origami.mybatis.executor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 相同查询的并发合并（single-flight）
+ * 同一个Key同一时刻只有一个调用方（leader）真正执行查询，其余并发调用方等待leader的结果；
+ * leader抛出的异常原样传递给所有等待者。缓存未命中、缓存失效瞬间的重复查询因此只会打到数据库一次。
+ *
+ * 每次执行带一个代数（generation），只有代数不低于调用方要求的查询才会被合并：
+ * 写操作之后发起的查询要求更高的代数，不会拿到写操作之前开始的查询结果，而是另起一次查询。
+ * 等待者拿到的集合结果是各自的副本，修改不会影响leader和其他等待者。
+ *
+ * @param <K> 查询Key类型，需正确实现equals/hashCode
+ */
+public class SingleFlight<K> {
+
+    // 正在执行的查询
+    private final ConcurrentHashMap<K, Flight> inFlight = new ConcurrentHashMap<>();
+    
+    // 没有二级缓存时使用的全局写代数，每次写操作提交后递增
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    // 等待者最长等待时间(毫秒)
+    private final long timeoutMs;
+
+    public SingleFlight(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * 执行查询：没有相同查询在执行时由当前线程执行，否则等待正在执行的查询结果
+     */
+    public Object execute(K key, Callable<Object> loader) throws Exception {
+        return execute(key, 0, loader);
+    }
+
+    /**
+     * 执行查询，只合并代数不低于 generation 的正在执行的查询
+     * @param generation 调用方要求的最低代数，通常是查询涉及的表最近一次被修改时的时钟值
+     */
+    public Object execute(K key, long generation, Callable<Object> loader) throws Exception {
+        Flight flight = new Flight(generation);
+        Flight existing;
+        while (true) {
+            existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null || existing.generation >= generation) {
+                break;
+            }
+            // 正在执行的查询开始于写操作之前，替换为当前线程的查询，旧查询的等待者不受影响
+            if (inFlight.replace(key, existing, flight)) {
+                existing = null;
+                break;
+            }
+        }
+
+        if (existing == null) {
+            // 当前线程是leader
+            try {
+                Object result = loader.call();
+                flight.future.complete(result);
+                return result;
+            } catch (Throwable e) {
+                flight.future.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        System.out.println("合并相同查询，等待执行结果: " + key);
+        try {
+            return copyOf(existing.future.get(timeoutMs, TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        } catch (TimeoutException e) {
+            throw new TimeoutException("等待合并查询结果超时(" + timeoutMs + "ms): " + key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * 当前正在执行的查询数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 当前全局写代数，没有二级缓存（无法按表区分）时作为查询要求的代数
+     */
+    public long getWriteGeneration() {
+        return writeGeneration.get();
+    }
+
+    /**
+     * 写操作生效后调用：之后发起的查询不再合并此前开始的查询
+     */
+    public void advanceWriteGeneration() {
+        writeGeneration.incrementAndGet();
+    }
+
+    /**
+     * 等待者拿到的集合结果复制一份，集合中的元素对象仍是共享的（与缓存命中时一致）
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copyOf(Object result) {
+        if (result instanceof List) {
+            return new ArrayList<>((List<Object>) result);
+        }
+        if (result instanceof Set) {
+            return new LinkedHashSet<>((Set<Object>) result);
+        }
+        if (result instanceof Map) {
+            return new LinkedHashMap<>((Map<Object, Object>) result);
+        }
+        return result;
+    }
+
+    private static class Flight {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final long generation;
+
+        Flight(long generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -2,10 +2,13 @@ package com.origami.mybatis.executor;
 
 import com.origami.mybatis.exception.SqlExecutionException;
 import com.origami.mybatis.handler.ResultSetHandler;
+import com.origami.mybatis.pool.ConnectionPool;
+import com.origami.mybatis.pool.ProxyConnection;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
 /**
  * SQL执行器
@@ -25,6 +28,7 @@ public class SqlExecutor {
             rs = st.executeQuery();
             return handler.handle(rs);
         } catch (Exception e) {
+            checkFatal(connection, e);
             throw new SqlExecutionException(sql, args, e);
         } finally {
             try {
@@ -47,6 +51,7 @@ public class SqlExecutor {
             }
             return st.executeUpdate();
         } catch (Exception e) {
+            checkFatal(connection, e);
             throw new SqlExecutionException(sql, args, e);
         } finally {
             try {
@@ -56,5 +61,15 @@ public class SqlExecutor {
             }
         }
     }
+
+    /**
+     * 连接级错误（网络中断、服务端关闭等）标记连接损坏，归还连接池时关闭而不是复用
+     */
+    private void checkFatal(Connection connection, Exception e) {
+        if (e instanceof SQLException && connection instanceof ProxyConnection
+                && ConnectionPool.isFatal((SQLException) e)) {
+            ((ProxyConnection) connection).markBroken();
+        }
+    }
 }
 
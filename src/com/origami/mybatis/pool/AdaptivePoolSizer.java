@@ -0,0 +1,107 @@
+package com.origami.mybatis.pool;
+
+/**
+ * 连接池自适应容量控制
+ * 每个采样周期根据统计增量估算需要的连接数（Little定律）：
+ * 平均占用连接数 L = 获取速率 λ（次/秒） × 平均借出时长 W（秒），目标连接数取 L 的1.25倍；
+ * 周期内有线程排队等待而估算值没有超过当前目标时，按等待线程数额外扩容。
+ *
+ * 扩容立即生效；缩容需要估算值连续 {@link #SHRINK_SAMPLES} 个周期低于目标的70%（滞回），
+ * 且距上次调整超过冷却时间，每次最多缩减差值的一半，避免在边界附近来回调整。
+ *
+ * 只由连接池的维护线程调用，非线程安全；目标连接数可被其他线程读取。
+ */
+class AdaptivePoolSizer {
+
+    private static final double HEADROOM = 1.25;
+    private static final double SHRINK_THRESHOLD = 0.7;
+    private static final int SHRINK_SAMPLES = 3;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long cooldownMs;
+
+    private volatile int targetSize;
+    // 最近一次估算的平均占用连接数
+    private volatile double estimatedDemand;
+
+    private PoolMetrics.Snapshot previous;
+    private long previousAt;
+    private int lowSamples;
+    private long lastChangeAt;
+
+    AdaptivePoolSizer(int minSize, int maxSize, int initialTarget, long cooldownMs) {
+        this.minSize = Math.max(1, Math.min(minSize, maxSize));
+        this.maxSize = maxSize;
+        this.cooldownMs = cooldownMs;
+        this.targetSize = clamp(initialTarget);
+    }
+
+    /**
+     * 采样一次，返回新的目标连接数（不调整时返回当前值）
+     */
+    int sample(PoolMetrics.Snapshot current, long now) {
+        PoolMetrics.Snapshot last = previous;
+        long lastAt = previousAt;
+        previous = current;
+        previousAt = now;
+        if (last == null || now <= lastAt) {
+            return targetSize;
+        }
+
+        long acquires = current.getAcquireTime().getCount() - last.getAcquireTime().getCount();
+        long usages = current.getUsageTime().getCount() - last.getUsageTime().getCount();
+        long waits = current.getWaitCount() - last.getWaitCount();
+        if (acquires < 0 || usages < 0 || waits < 0) {
+            // 统计被清零，重新开始
+            return targetSize;
+        }
+        double usageMillis = current.getUsageTime().getMeanMillis() * current.getUsageTime().getCount()
+                - last.getUsageTime().getMeanMillis() * last.getUsageTime().getCount();
+
+        double seconds = (now - lastAt) / 1000.0;
+        double arrivalRate = acquires / seconds;
+        double meanUsageSeconds = usages == 0 ? 0 : usageMillis / usages / 1000.0;
+        // 借出时间超过采样周期的连接还没有归还，至少按当前借出数计算
+        double demand = Math.max(arrivalRate * meanUsageSeconds, current.getActiveConnections());
+        estimatedDemand = demand;
+
+        int target = targetSize;
+        int desired = clamp((int) Math.ceil(demand * HEADROOM));
+        if (waits > 0 && desired <= target) {
+            desired = clamp(target + Math.max(1, current.getWaitingThreads()));
+        }
+
+        if (desired > target) {
+            lowSamples = 0;
+            lastChangeAt = now;
+            targetSize = desired;
+            return desired;
+        }
+        if (desired < target * SHRINK_THRESHOLD) {
+            lowSamples++;
+            if (lowSamples >= SHRINK_SAMPLES && now - lastChangeAt >= cooldownMs) {
+                lowSamples = 0;
+                lastChangeAt = now;
+                int shrunk = clamp(target - Math.max(1, (target - desired) / 2));
+                targetSize = shrunk;
+                return shrunk;
+            }
+        } else {
+            lowSamples = 0;
+        }
+        return target;
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    int getTargetSize() {
+        return targetSize;
+    }
+
+    double getEstimatedDemand() {
+        return estimatedDemand;
+    }
+}
@@ -0,0 +1,268 @@
+package com.origami.mybatis.pool;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁连接容器
+ * 连接的借出与归还不经过任何共享锁，由连接自身状态的CAS决定归属：
+ * 1. 线程本地列表：记录本线程最近归还的连接，借用时优先尝试，同一线程反复借还几乎不产生共享写；
+ *    虚拟线程不使用（通常一个任务一个线程，列表不会被复用，只会为每个线程多分配一个列表）
+ * 2. 共享列表：所有连接（CopyOnWriteArrayList，只在新建/移除连接时复制），本地列表没有可用连接时扫描
+ * 3. 等待队列：没有空闲连接时借用方按到达顺序排队（FIFO），归还方把连接直接交给队首的等待者；
+ *    有线程在排队时后来的借用方不抢占空闲连接，直接排到队尾，避免等待者饥饿
+ *
+ * 连接状态：空闲 -> 借出 -> 空闲，或 空闲 -> 保留（归还、清理中） -> 空闲/移除
+ * 等待使用 LockSupport.park，不持有任何监视器，虚拟线程等待时会让出载体线程。
+ */
+class ConnectionBag {
+
+    // 线程本地列表最多记录的连接数
+    private static final int MAX_THREAD_LOCAL = 16;
+
+    private final CopyOnWriteArrayList<PooledConnection> sharedList = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<PooledConnection>> threadList = ThreadLocal.withInitial(() -> new ArrayList<>(MAX_THREAD_LOCAL));
+    private final ConcurrentLinkedQueue<Waiter> waitQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    // 空闲连接数，在状态切换处增减；分段计数，借还路径上不争用同一个变量
+    private final LongAdder idleCount = new LongAdder();
+
+    // Thread.isVirtual()，JDK 21 之前为null
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    /**
+     * 排队等待连接的线程
+     * slot：null 表示等待中；交接时归还方用CAS放入连接，超时或中断时等待者用CAS放入 CANCELLED
+     */
+    private static final class Waiter {
+        static final Object CANCELLED = new Object();
+
+        final Thread thread = Thread.currentThread();
+        final AtomicReference<Object> slot = new AtomicReference<>();
+
+        boolean fulfill(PooledConnection connection) {
+            if (slot.compareAndSet(null, connection)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        boolean cancel() {
+            return slot.compareAndSet(null, CANCELLED);
+        }
+    }
+
+    /**
+     * 借用连接：依次尝试线程本地列表、共享列表，最后排队等待交接
+     * @param timeoutNanos 最长等待时间，<=0 表示不等待
+     * @return 已标记为借出的连接，超时返回null
+     */
+    PooledConnection borrow(long timeoutNanos) throws InterruptedException {
+        // 已有线程在排队时不抢占，保证先到先得
+        if (waiters.get() == 0) {
+            if (!isVirtualThread()) {
+                List<PooledConnection> local = threadList.get();
+                for (int i = local.size() - 1; i >= 0; i--) {
+                    PooledConnection connection = local.remove(i);
+                    if (take(connection, PooledConnection.STATE_IN_USE)) {
+                        return connection;
+                    }
+                }
+            }
+            PooledConnection idle = scanShared();
+            if (idle != null || timeoutNanos <= 0) {
+                return idle;
+            }
+        } else if (timeoutNanos <= 0) {
+            return null;
+        }
+        return await(timeoutNanos);
+    }
+
+    /**
+     * 排队等待归还方交接，超时返回null
+     */
+    private PooledConnection await(long timeoutNanos) throws InterruptedException {
+        Waiter waiter = new Waiter();
+        waiters.incrementAndGet();
+        waitQueue.offer(waiter);
+        try {
+            // 先入队再扫描共享列表：入队之前变为空闲的连接由本线程取走，入队之后归还的连接会交接过来，不会错过
+            PooledConnection idle = scanShared();
+            if (idle != null) {
+                if (waiter.cancel()) {
+                    return idle;
+                }
+                // 扫描期间已经收到交接的连接，多拿的一个归还
+                idle.setState(PooledConnection.STATE_RESERVED);
+                requite(idle);
+                return (PooledConnection) waiter.slot.get();
+            }
+
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (waiter.slot.get() == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    if (waiter.cancel()) {
+                        throw new InterruptedException();
+                    }
+                    // 中断与交接同时发生：保留连接，恢复中断标记
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (waiter.cancel()) {
+                return null;
+            }
+            return (PooledConnection) waiter.slot.get();
+        } finally {
+            if (waiter.slot.get() == Waiter.CANCELLED) {
+                waitQueue.remove(waiter);
+            }
+            waiters.decrementAndGet();
+        }
+    }
+
+    private PooledConnection scanShared() {
+        for (PooledConnection connection : sharedList) {
+            if (take(connection, PooledConnection.STATE_IN_USE)) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 空闲连接切换为指定状态（借出或保留），成功时空闲计数减一
+     */
+    private boolean take(PooledConnection connection, int state) {
+        if (connection.compareAndSetState(PooledConnection.STATE_NOT_IN_USE, state)) {
+            idleCount.decrement();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 归还连接（调用方已将其置为保留状态）：有等待者时直接交给队首的等待者，否则放入本线程的本地列表
+     */
+    void requite(PooledConnection connection) {
+        while (true) {
+            Waiter waiter;
+            while ((waiter = waitQueue.poll()) != null) {
+                connection.setState(PooledConnection.STATE_IN_USE);
+                if (waiter.fulfill(connection)) {
+                    return;
+                }
+                // 等待者已超时或中断，交给下一个
+            }
+            idleCount.increment();
+            connection.setState(PooledConnection.STATE_NOT_IN_USE);
+            // 置为空闲之前刚入队的等待者可能没有扫描到该连接，重新取回后交接
+            if (waitQueue.isEmpty() || !take(connection, PooledConnection.STATE_RESERVED)) {
+                break;
+            }
+        }
+
+        if (!isVirtualThread()) {
+            List<PooledConnection> local = threadList.get();
+            if (local.size() < MAX_THREAD_LOCAL) {
+                local.add(connection);
+            }
+        }
+    }
+
+    /**
+     * 加入新建的空闲连接，有等待者时直接交接
+     */
+    void add(PooledConnection connection) {
+        connection.setState(PooledConnection.STATE_RESERVED);
+        sharedList.add(connection);
+        requite(connection);
+    }
+
+    /**
+     * 保留空闲连接（清理、关闭前调用），保留后不会被借出
+     */
+    boolean reserve(PooledConnection connection) {
+        return take(connection, PooledConnection.STATE_RESERVED);
+    }
+
+    /**
+     * 移除借出或保留中的连接
+     */
+    boolean remove(PooledConnection connection) {
+        if (!connection.compareAndSetState(PooledConnection.STATE_IN_USE, PooledConnection.STATE_REMOVED)
+                && !connection.compareAndSetState(PooledConnection.STATE_RESERVED, PooledConnection.STATE_REMOVED)) {
+            return false;
+        }
+        sharedList.remove(connection);
+        return true;
+    }
+
+    /**
+     * 当前所有连接（快照）
+     */
+    List<PooledConnection> values() {
+        return new ArrayList<>(sharedList);
+    }
+
+    /**
+     * 空闲连接数，不遍历连接列表（并发借还时为近似值）
+     */
+    int getIdleCount() {
+        return Math.max(0, (int) idleCount.sum());
+    }
+
+    /**
+     * 处于指定状态的连接数
+     */
+    int count(int state) {
+        int count = 0;
+        for (PooledConnection connection : sharedList) {
+            if (connection.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static boolean isVirtualThread() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 正在等待连接的线程数
+     */
+    int getWaitingThreadCount() {
+        return waiters.get();
+    }
+}
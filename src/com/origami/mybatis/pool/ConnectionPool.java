@@ -1,32 +1,80 @@
 package com.origami.mybatis.pool;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * 数据库连接池
+ * 连接存放在无锁的 {@link ConnectionBag} 中：借用和归还只做CAS，优先复用本线程刚归还的连接，
+ * 没有空闲连接时按到达顺序排队（FIFO），归还方直接交给队首的等待者；
+ * 获取连接的截止时间精确到毫秒，截止前取到的连接检查失效时继续获取，直到截止时间。
+ *
+ * 新建连接：空闲连接少于 minIdle 或有线程在等待时，由后台创建线程并行建立连接，建好后直接交给等待者，
+ * 请求线程只等待交接，不承担TCP握手和认证的耗时。
+ *
+ * 有效性检查：只有空闲超过 validationIdleMs 的连接在借出前检查一次（ping或测试查询），
+ * 刚归还的连接直接复用；执行SQL时出现连接级错误（见 {@link #isFatal(SQLException)}）的连接归还时直接关闭。
+ *
+ * 连接维护：连接达到最长存活时间（maxLifetime）后替换，避免被数据库的 wait_timeout 或中间代理悄悄断开；
+ * 空闲超过保活间隔（keepaliveTime）的连接在后台ping一次。每个连接的存活时间和保活间隔在配置值的90%~100%之间随机，
+ * 同一批创建的连接不会同时到期；借出中的连接只做标记，归还时才关闭；每轮维护替换的连接数有上限，不会集中重连。
+ *
+ * 自适应容量（可选，见 {@link #enableAdaptiveSizing(int, long, long)}）：由 {@link AdaptivePoolSizer} 定期估算需要的连接数，
+ * 在 [minSize, maxSize] 内调整允许的连接数上限，负载下降后关闭多余的空闲连接。
+ *
+ * 统计：获取连接耗时、借出时长、建立连接耗时的直方图及各类计数见 {@link #getMetrics()}，
+ * 调用 {@link #enableJmx(String)} 后注册为JMX MBean。
  */
-public class ConnectionPool {
+public class ConnectionPool implements ConnectionPoolMXBean {
 
     private final String url;
     private final String username;
     private final String password;
     private final int initialSize;      // 初始连接数
     private final int maxSize;          // 最大连接数
+    private volatile int minIdle;       // 最少空闲连接数，低于该值时后台补充
     private final int maxIdleTime;      // 最大空闲时间(秒)
-    private final int connectionTimeout; // 获取连接超时时间(秒)
-
-    private final LinkedBlockingQueue<PooledConnection> idleConnections;
-    private final AtomicInteger activeConnections = new AtomicInteger(0);
+    private volatile long connectionTimeoutMs; // 获取连接超时时间(毫秒)
+    private volatile long validationIdleMs = 500; // 空闲超过该时长的连接借出前检查有效性(毫秒)
+    private volatile String testQuery;            // 有效性检查使用的测试查询，null 表示使用驱动的ping（isValid）
+    private volatile long leakDetectionThresholdMs; // 借出超过该时长未归还视为泄漏并打印借出位置(毫秒)，0 表示不检测
+    private ScheduledFuture<?> leakDetectionTask;
+    private volatile long maxLifetimeMs = TimeUnit.MINUTES.toMillis(30); // 连接最长存活时间(毫秒)，0 表示不限
+    private volatile long keepaliveTimeMs;  // 空闲超过该时长的连接ping一次(毫秒)，0 表示不保活
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 3;
+    // 存活时间和保活间隔的随机缩短比例
+    private static final double LIFETIME_JITTER = 0.1;
+
+    private final ConnectionBag bag = new ConnectionBag();
+    // 活跃连接数不单独计数，统计时按连接状态计算，不会因重复归还等原因漂移
     private final AtomicInteger totalConnections = new AtomicInteger(0);
+    private final PoolMetrics metrics = new PoolMetrics();
+    private volatile ObjectName registeredMBean;
+
+    // 自适应容量控制，未启用时为null
+    private volatile AdaptivePoolSizer sizer;
+    private ScheduledFuture<?> sizingTask;
+
+    // 后台创建中的连接数（已计入总连接数）
+    private final AtomicInteger pendingConnections = new AtomicInteger(0);
+    private volatile Exception lastCreateError;
 
     private final ScheduledExecutorService cleanupExecutor;
+    private final ThreadPoolExecutor fillerExecutor;
     private volatile boolean shutdown = false;
 
     public ConnectionPool(String url, String username, String password, int initialSize) {
@@ -41,8 +89,8 @@ public class ConnectionPool {
         this.initialSize = initialSize;
         this.maxSize = maxSize;
         this.maxIdleTime = maxIdleTime;
-        this.connectionTimeout = connectionTimeout;
-        this.idleConnections = new LinkedBlockingQueue<>();
+        this.connectionTimeoutMs = TimeUnit.SECONDS.toMillis(connectionTimeout);
+        this.minIdle = Math.min(initialSize, maxSize);
 
         // 启动清理线程
         this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -51,6 +99,16 @@ public class ConnectionPool {
             return t;
         });
 
+        // 后台创建连接的线程，空闲时回收
+        int fillerThreads = Math.max(1, Math.min(maxSize, 4));
+        this.fillerExecutor = new ThreadPoolExecutor(fillerThreads, fillerThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "连接创建线程");
+            t.setDaemon(true);
+            return t;
+        });
+        this.fillerExecutor.allowCoreThreadTimeOut(true);
+
         // 创建初始连接
         initPool();
 
@@ -64,9 +122,8 @@ public class ConnectionPool {
     private void initPool() {
         try {
             for (int i = 0; i < initialSize; i++) {
-                Connection rawConn = DriverManager.getConnection(url, username, password);
-                PooledConnection pooledConn = new PooledConnection(rawConn, this);
-                idleConnections.offer(pooledConn);
+                PooledConnection pooledConn = createConnection();
+                bag.add(pooledConn);
                 totalConnections.incrementAndGet();
             }
             System.out.println("连接池初始化完成，初始连接数：" + initialSize + "，最大连接数：" + maxSize);
@@ -77,103 +134,362 @@ public class ConnectionPool {
 
     /**
      * 获取连接（支持超时）
+     * 顺序：本线程最近归还的连接 -> 其他空闲连接 -> 等待归还或后台新建的连接交接
      */
     public Connection getConnection() throws SQLException {
         if (shutdown) {
             throw new SQLException("连接池已关闭");
         }
 
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(connectionTimeoutMs);
+        boolean waited = false;
         try {
-            // 先尝试从空闲连接中获取
-            PooledConnection conn = getValidConnection();
-            if (conn != null) {
-                activeConnections.incrementAndGet();
-                conn.setLastUsedTime(System.currentTimeMillis());
-                return conn;
-            }
-
-            // 如果没有空闲连接且未达到最大连接数，创建新连接
-            if (totalConnections.get() < maxSize) {
-                synchronized (this) {
-                    if (totalConnections.get() < maxSize) {
-                        Connection rawConn = DriverManager.getConnection(url, username, password);
-                        PooledConnection newConn = new PooledConnection(rawConn, this);
-                        totalConnections.incrementAndGet();
-                        activeConnections.incrementAndGet();
-                        newConn.setLastUsedTime(System.currentTimeMillis());
-                        System.out.println("创建新连接，当前总连接数：" + totalConnections.get());
-                        return newConn;
+            while (true) {
+                PooledConnection conn = bag.borrow(0);
+                if (conn == null) {
+                    // 没有空闲连接：请求后台补充，然后排队等待交接
+                    waited = true;
+                    fillPool(1);
+                    conn = bag.borrow(deadline - System.nanoTime());
+                }
+                if (conn == null) {
+                    metrics.recordTimeout();
+                    metrics.recordAcquire(System.nanoTime() - start, waited);
+                    Exception createError = lastCreateError;
+                    throw new SQLException("获取连接超时(" + connectionTimeoutMs + "ms)，当前活跃连接数：" + getActiveConnections()
+                            + "，等待线程：" + bag.getWaitingThreadCount()
+                            + (createError != null ? "，最近一次创建连接失败：" + createError.getMessage() : ""), createError);
+                }
+
+                if (!conn.isEvicted() && validateOnBorrow(conn)) {
+                    long now = System.currentTimeMillis();
+                    long nanoTime = System.nanoTime();
+                    conn.setLastUsedTime(now);
+                    conn.markBorrowed(now, nanoTime, leakDetectionThresholdMs > 0 ? new Exception("连接借出位置") : null);
+                    metrics.recordAcquire(nanoTime - start, waited);
+                    if (minIdle > 0) {
+                        fillPool(0);
                     }
+                    // 每次借出一个新句柄，归还后旧句柄的操作不会影响下一个借用方
+                    return new ProxyConnection(conn);
                 }
+                // 连接无效或已被软驱逐，关闭后在截止时间内继续获取
+                discardConnection(conn);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("获取连接被中断", e);
+        }
+    }
 
-            // 等待空闲连接
-            conn = idleConnections.poll(connectionTimeout, TimeUnit.SECONDS);
-            if (conn != null && isConnectionValid(conn)) {
-                activeConnections.incrementAndGet();
-                conn.setLastUsedTime(System.currentTimeMillis());
-                return conn;
+    /**
+     * 按需求补充连接：空闲连接少于 minIdle 或有线程在等待时，由后台线程并行创建
+     * 先用CAS占用名额，握手在后台线程中进行，借用方只等待交接
+     * @param waiting 即将开始等待、尚未登记为等待者的线程数
+     */
+    private void fillPool(int waiting) {
+        if (shutdown) {
+            return;
+        }
+        int idle = bag.getIdleCount();
+        int needed = Math.max(minIdle - idle, bag.getWaitingThreadCount() + waiting) - pendingConnections.get();
+        for (int i = 0; i < needed && reserveSlot(); i++) {
+            pendingConnections.incrementAndGet();
+            try {
+                fillerExecutor.execute(this::createIdleConnection);
+            } catch (RejectedExecutionException e) {
+                pendingConnections.decrementAndGet();
+                totalConnections.decrementAndGet();
+                break;
             }
+        }
+    }
 
-            throw new SQLException("获取连接超时，当前活跃连接数：" + activeConnections.get());
+    /**
+     * 未达到允许的连接数上限时占用一个名额
+     */
+    private boolean reserveSlot() {
+        int limit = getTargetSize();
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= limit) {
+                return false;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+        return true;
+    }
 
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new SQLException("获取连接被中断", e);
+    /**
+     * 建立新连接，记录建立耗时和失败次数
+     */
+    private PooledConnection createConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            Connection rawConn = DriverManager.getConnection(url, username, password);
+            PooledConnection newConn = new PooledConnection(rawConn, this);
+            metrics.recordCreation(System.nanoTime() - start);
+            return newConn;
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordCreationFailure();
+            throw e;
         }
     }
 
     /**
-     * 获取有效的空闲连接
+     * 后台创建连接（名额已占用），创建后交给等待者或放入空闲连接
      */
-    private PooledConnection getValidConnection() {
-        PooledConnection conn;
-        while ((conn = idleConnections.poll()) != null) {
-            if (isConnectionValid(conn)) {
-                return conn;
-            } else {
-                // 连接无效，关闭并减少总连接数
-                closeConnection(conn);
+    private void createIdleConnection() {
+        try {
+            PooledConnection newConn = createConnection();
+            if (shutdown) {
                 totalConnections.decrementAndGet();
+                closeConnection(newConn);
+                return;
+            }
+            bag.add(newConn);
+            lastCreateError = null;
+            System.out.println("后台创建连接，当前总连接数：" + totalConnections.get());
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            lastCreateError = e;
+            System.err.println("创建连接失败: " + e.getMessage());
+            if (!shutdown && bag.getWaitingThreadCount() > 0) {
+                // 仍有线程在等待，稍后重试
+                try {
+                    cleanupExecutor.schedule(() -> fillPool(0), 100, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ignored) {
+                    // 连接池正在关闭
+                }
             }
+        } finally {
+            pendingConnections.decrementAndGet();
         }
-        return null;
     }
 
     /**
-     * 检查连接是否有效
+     * 移除并关闭借出或保留中的连接
+     */
+    private void discardConnection(PooledConnection conn) {
+        if (bag.remove(conn)) {
+            totalConnections.decrementAndGet();
+        }
+        closeConnection(conn);
+        fillPool(0);
+    }
+
+    /**
+     * 借出前检查：空闲时间未超过 validationIdleMs 的连接跳过检查
+     */
+    private boolean validateOnBorrow(PooledConnection conn) {
+        if (System.currentTimeMillis() - conn.getLastAliveTime() <= validationIdleMs) {
+            metrics.recordValidation(true, false);
+            return true;
+        }
+        boolean valid = isConnectionValid(conn);
+        metrics.recordValidation(false, !valid);
+        if (valid) {
+            return true;
+        }
+        System.out.println("连接空闲后检查失效，已关闭");
+        return false;
+    }
+
+    /**
+     * 检查连接是否有效：配置了测试查询时执行测试查询，否则使用驱动的ping
      */
     private boolean isConnectionValid(PooledConnection conn) {
+        Connection realConnection = conn.getRealConnection();
         try {
-            return conn != null &&
-                   !conn.getRealConnection().isClosed() &&
-                   conn.getRealConnection().isValid(3);
+            if (realConnection.isClosed()) {
+                return false;
+            }
+            String query = testQuery;
+            if (query == null) {
+                return realConnection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            }
+            try (Statement statement = realConnection.createStatement()) {
+                statement.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+                statement.execute(query);
+                return true;
+            }
         } catch (SQLException e) {
             return false;
         }
     }
 
     /**
-     * 归还连接
+     * 是否为连接级错误：SQLState 08xxx（连接异常）以及常见的服务端关闭、连接中断状态码，
+     * 出现这类错误的连接不能再使用
      */
-    public void returnConnection(PooledConnection connection) {
-        if (connection == null || shutdown) {
+    public static boolean isFatal(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String sqlState = current.getSQLState();
+            if (sqlState != null && (sqlState.startsWith("08")
+                    || sqlState.equals("57P01") || sqlState.equals("57P02") || sqlState.equals("57P03")
+                    || sqlState.equals("01002") || sqlState.equals("JZ0C0") || sqlState.equals("JZ0C1"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 设置有效性检查
+     * @param validationIdleMs 空闲超过该时长的连接借出前检查（毫秒），0 表示每次借出都检查
+     * @param testQuery 测试查询（如 SELECT 1），null 表示使用驱动的ping
+     */
+    public void setValidation(long validationIdleMs, String testQuery) {
+        this.validationIdleMs = validationIdleMs;
+        this.testQuery = testQuery;
+    }
+
+    /**
+     * 设置泄漏检测阈值：连接借出超过该时长未归还时打印借出位置的调用栈，0 表示不检测
+     * 启用后每次借出都会记录调用栈，有一定开销，建议只在排查问题时开启
+     */
+    public void setLeakDetectionThreshold(long leakDetectionThresholdMs) {
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+        if (leakDetectionTask != null) {
+            leakDetectionTask.cancel(false);
+            leakDetectionTask = null;
+        }
+        if (leakDetectionThresholdMs > 0) {
+            long period = Math.max(100, Math.min(1000, leakDetectionThresholdMs / 2));
+            leakDetectionTask = cleanupExecutor.scheduleWithFixedDelay(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 检查借出超过阈值的连接，每个连接每次借出只报告一次
+     */
+    private void detectLeaks() {
+        long threshold = leakDetectionThresholdMs;
+        long now = System.currentTimeMillis();
+        for (PooledConnection conn : bag.values()) {
+            Throwable trace = conn.getBorrowTrace();
+            if (conn.getState() == PooledConnection.STATE_IN_USE && trace != null && !conn.isLeakReported()
+                    && now - conn.getBorrowedAt() > threshold) {
+                conn.setLeakReported(true);
+                System.err.println("可能的连接泄漏：连接已借出 " + (now - conn.getBorrowedAt()) + "ms 未归还，借出位置：");
+                trace.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 设置连接最长存活时间（毫秒，默认30分钟），0 表示不限
+     * 应比数据库的 wait_timeout 和中间代理的空闲断开时间短；每个连接实际在该时长的90%~100%之间替换
+     */
+    public void setMaxLifetime(long maxLifetimeMs) {
+        this.maxLifetimeMs = maxLifetimeMs;
+    }
+
+    /**
+     * 设置保活间隔（毫秒），空闲超过该时长的连接在后台ping一次，0 表示不保活
+     */
+    public void setKeepaliveTime(long keepaliveTimeMs) {
+        this.keepaliveTimeMs = keepaliveTimeMs;
+    }
+
+    /**
+     * 启用自适应容量：每个采样周期根据获取速率和平均借出时长估算需要的连接数，在 [minSize, maxSize] 内调整连接数上限
+     * 扩容在下一个采样周期生效；缩容需要连续多个周期负载偏低且距上次调整超过冷却时间
+     * @param minSize 最少连接数
+     * @param sampleIntervalMs 采样周期（毫秒）
+     * @param cooldownMs 调整后至少间隔该时长才能缩容（毫秒）
+     */
+    public void enableAdaptiveSizing(int minSize, long sampleIntervalMs, long cooldownMs) {
+        if (sizingTask != null) {
+            sizingTask.cancel(false);
+        }
+        AdaptivePoolSizer newSizer = new AdaptivePoolSizer(minSize, maxSize, Math.max(minSize, totalConnections.get()), cooldownMs);
+        newSizer.sample(getMetrics(), System.currentTimeMillis());
+        sizer = newSizer;
+        sizingTask = cleanupExecutor.scheduleWithFixedDelay(this::adjustPoolSize, sampleIntervalMs, sampleIntervalMs,
+                TimeUnit.MILLISECONDS);
+        System.out.println("连接池启用自适应容量，范围 [" + newSizer.getTargetSize() + "~" + maxSize + "]，采样周期 " + sampleIntervalMs + "ms");
+    }
+
+    /**
+     * 采样并调整连接数上限，缩容时关闭超出上限的空闲连接
+     */
+    private void adjustPoolSize() {
+        AdaptivePoolSizer current = sizer;
+        if (shutdown || current == null) {
             return;
         }
+        int before = current.getTargetSize();
+        int after = current.sample(getMetrics(), System.currentTimeMillis());
+        if (after == before) {
+            return;
+        }
+        metrics.recordResize(after > before);
+        System.out.println(String.format("连接池%s: %d -> %d，估算占用连接数 %.1f", after > before ? "扩容" : "缩容",
+                before, after, current.getEstimatedDemand()));
+        if (after > before) {
+            fillPool(0);
+            return;
+        }
+        int excess = totalConnections.get() - after;
+        for (PooledConnection conn : bag.values()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (bag.reserve(conn)) {
+                discardConnection(conn);
+                excess--;
+            }
+        }
+    }
 
+    /**
+     * 设置获取连接的超时时间（毫秒）
+     */
+    public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+        this.connectionTimeoutMs = connectionTimeoutMs;
+    }
+
+    /**
+     * 设置最少空闲连接数（默认等于初始连接数，不超过最大连接数），不足时立即在后台补充
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+        fillPool(0);
+    }
+
+    /**
+     * 归还连接（由 {@link PooledConnection#close()} 调用，连接已处于保留状态）
+     */
+    void returnConnection(PooledConnection connection) {
+        metrics.recordUsage(System.nanoTime() - connection.getBorrowedNanos());
         try {
-            if (isConnectionValid(connection)) {
+            if (connection.isBroken()) {
+                // 执行中出现连接级错误，不再放回池中
+                metrics.recordBrokenEviction();
+                System.out.println("连接出现连接级错误，已关闭");
+                discardConnection(connection);
+            } else if (connection.isEvicted()) {
+                // 借出期间被软驱逐
+                discardConnection(connection);
+            } else if (!shutdown && !connection.getRealConnection().isClosed()) {
+                if (connection.isLeakReported()) {
+                    System.out.println("之前报告泄漏的连接已归还，借出时长: "
+                            + (System.currentTimeMillis() - connection.getBorrowedAt()) + "ms");
+                }
+                // 归还时只做本地检查，不访问数据库；只重置借出期间修改过的属性
+                connection.resetState();
                 connection.setLastUsedTime(System.currentTimeMillis());
-                idleConnections.offer(connection);
-                activeConnections.decrementAndGet();
+                bag.requite(connection);
             } else {
-                // 连接无效，关闭并减少总连接数
-                closeConnection(connection);
-                totalConnections.decrementAndGet();
-                activeConnections.decrementAndGet();
+                // 连接已关闭或连接池已关闭，关闭并减少总连接数
+                discardConnection(connection);
             }
         } catch (Exception e) {
-            System.err.println("归还连接失败: " + e.getMessage());
+            // 重置状态失败的连接不能再借出，关闭并释放名额，否则一直处于保留状态占用连接数
+            System.err.println("归还连接失败，关闭连接: " + e.getMessage());
+            discardConnection(connection);
         }
     }
 
@@ -182,6 +498,74 @@ public class ConnectionPool {
      */
     private void startCleanupTask() {
         cleanupExecutor.scheduleWithFixedDelay(this::cleanupIdleConnections, 60, 60, TimeUnit.SECONDS);
+        // 兜底：定期检查空闲连接是否低于 minIdle（例如创建失败之后）
+        cleanupExecutor.scheduleWithFixedDelay(() -> fillPool(0), 5, 5, TimeUnit.SECONDS);
+        cleanupExecutor.scheduleWithFixedDelay(this::maintainConnections, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 替换达到存活时间的连接，ping空闲超过保活间隔的连接
+     */
+    private void maintainConnections() {
+        long lifetime = maxLifetimeMs;
+        long keepalive = keepaliveTimeMs;
+        if (shutdown || lifetime <= 0 && keepalive <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        // 每轮最多替换的连接数，到期时间接近的连接分几轮替换
+        int retireBudget = Math.max(1, maxSize / 10);
+        for (PooledConnection conn : bag.values()) {
+            if (conn.isEvicted()) {
+                // 已标记替换的连接在空闲时关闭（标记时正好被归还的）
+                if (bag.reserve(conn)) {
+                    discardConnection(conn);
+                }
+                continue;
+            }
+            if (lifetime > 0 && now - conn.getCreatedAt() >= jittered(lifetime, conn)) {
+                if (retireBudget > 0) {
+                    retireBudget--;
+                    metrics.recordRetirement();
+                    boolean idle = bag.reserve(conn);
+                    // 借出中的连接只做标记，归还时关闭
+                    conn.markEvicted();
+                    if (idle) {
+                        discardConnection(conn);
+                    }
+                }
+                continue;
+            }
+            if (keepalive > 0 && now - conn.getLastAliveTime() >= jittered(keepalive, conn) && bag.reserve(conn)) {
+                try {
+                    fillerExecutor.execute(() -> keepalive(conn));
+                } catch (RejectedExecutionException e) {
+                    bag.requite(conn);
+                }
+            }
+        }
+    }
+
+    private static long jittered(long duration, PooledConnection conn) {
+        return duration - (long) (duration * LIFETIME_JITTER * conn.getJitter());
+    }
+
+    /**
+     * 保活：ping保留中的空闲连接，有效则放回，失效则关闭
+     */
+    private void keepalive(PooledConnection conn) {
+        boolean valid = !shutdown && isConnectionValid(conn);
+        metrics.recordKeepalive(!valid && !shutdown);
+        if (valid) {
+            conn.markAlive(System.currentTimeMillis());
+            bag.requite(conn);
+        } else {
+            if (!shutdown) {
+                System.out.println("保活检查发现连接失效，已关闭");
+            }
+            discardConnection(conn);
+        }
     }
 
     /**
@@ -192,20 +576,18 @@ public class ConnectionPool {
 
         long currentTime = System.currentTimeMillis();
         int cleaned = 0;
+        int idle = bag.getIdleCount();
 
-        // 保留至少initialSize个连接
-        while (totalConnections.get() > initialSize) {
-            PooledConnection conn = idleConnections.peek();
-            if (conn == null) break;
-
+        // 保留至少minIdle个空闲连接，先保留（CAS）再关闭，不会关闭正被借出的连接
+        for (PooledConnection conn : bag.values()) {
+            if (idle <= minIdle) {
+                break;
+            }
             long idleTime = (currentTime - conn.getLastUsedTime()) / 1000;
-            if (idleTime > maxIdleTime) {
-                idleConnections.poll();
-                closeConnection(conn);
-                totalConnections.decrementAndGet();
+            if (idleTime > maxIdleTime && bag.reserve(conn)) {
+                discardConnection(conn);
+                idle--;
                 cleaned++;
-            } else {
-                break; // 队列是按时间排序的，后面的连接更新
             }
         }
 
@@ -227,12 +609,198 @@ public class ConnectionPool {
         }
     }
 
+    /**
+     * 软驱逐所有连接：空闲连接立即关闭，借出中的连接归还时关闭，不影响正在使用连接的线程
+     * 用于数据库切换、凭据轮换等需要重建全部连接的场景，关闭的连接由后台按需补充
+     */
+    @Override
+    public void softEvictConnections() {
+        int evicted = 0;
+        for (PooledConnection conn : bag.values()) {
+            conn.markEvicted();
+            evicted++;
+            if (bag.reserve(conn)) {
+                discardConnection(conn);
+            }
+        }
+        metrics.recordSoftEviction(evicted);
+        System.out.println("软驱逐了 " + evicted + " 个连接");
+    }
+
+    /**
+     * 获取统计快照：连接数、等待线程数以及获取连接耗时、借出时长、建立连接耗时的分布
+     */
+    public PoolMetrics.Snapshot getMetrics() {
+        return metrics.snapshot(totalConnections.get(), getActiveConnections(), getIdleConnections(),
+                pendingConnections.get(), bag.getWaitingThreadCount(), getTargetSize(), getEstimatedDemand());
+    }
+
+    @Override
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return bag.count(PooledConnection.STATE_IN_USE);
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return bag.getIdleCount();
+    }
+
+    @Override
+    public int getPendingConnections() {
+        return pendingConnections.get();
+    }
+
+    @Override
+    public int getWaitingThreadCount() {
+        return bag.getWaitingThreadCount();
+    }
+
+    @Override
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    @Override
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public int getTargetSize() {
+        AdaptivePoolSizer current = sizer;
+        return current != null ? current.getTargetSize() : maxSize;
+    }
+
+    @Override
+    public double getEstimatedDemand() {
+        AdaptivePoolSizer current = sizer;
+        return current != null ? current.getEstimatedDemand() : 0;
+    }
+
+    @Override
+    public long getGrowCount() {
+        return getMetrics().getGrowCount();
+    }
+
+    @Override
+    public long getShrinkCount() {
+        return getMetrics().getShrinkCount();
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return getMetrics().getAcquireTime().getCount();
+    }
+
+    @Override
+    public long getWaitCount() {
+        return getMetrics().getWaitCount();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return getMetrics().getTimeoutCount();
+    }
+
+    @Override
+    public double getAcquireP50Millis() {
+        return getMetrics().getAcquireTime().getP50Millis();
+    }
+
+    @Override
+    public double getAcquireP99Millis() {
+        return getMetrics().getAcquireTime().getP99Millis();
+    }
+
+    @Override
+    public double getAcquireMaxMillis() {
+        return getMetrics().getAcquireTime().getMaxMillis();
+    }
+
+    @Override
+    public double getUsageP50Millis() {
+        return getMetrics().getUsageTime().getP50Millis();
+    }
+
+    @Override
+    public double getUsageP99Millis() {
+        return getMetrics().getUsageTime().getP99Millis();
+    }
+
+    @Override
+    public double getUsageMaxMillis() {
+        return getMetrics().getUsageTime().getMaxMillis();
+    }
+
+    @Override
+    public double getCreationAverageMillis() {
+        return getMetrics().getCreationTime().getMeanMillis();
+    }
+
+    @Override
+    public double getCreationMaxMillis() {
+        return getMetrics().getCreationTime().getMaxMillis();
+    }
+
+    @Override
+    public long getCreationFailureCount() {
+        return getMetrics().getCreationFailureCount();
+    }
+
+    @Override
+    public long getValidationFailureCount() {
+        return getMetrics().getValidationFailureCount();
+    }
+
+    @Override
+    public long getBrokenEvictionCount() {
+        return getMetrics().getBrokenEvictionCount();
+    }
+
+    @Override
+    public long getRetirementCount() {
+        return getMetrics().getRetirementCount();
+    }
+
+    @Override
+    public long getKeepaliveFailureCount() {
+        return getMetrics().getKeepaliveFailureCount();
+    }
+
+    /**
+     * 注册为JMX MBean（com.origami.mybatis:type=ConnectionPool,name=连接池名），关闭连接池时注销
+     */
+    public void enableJmx(String poolName) {
+        if (registeredMBean != null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.origami.mybatis:type=ConnectionPool,name=" + ObjectName.quote(poolName));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+                registeredMBean = objectName;
+            }
+        } catch (Exception e) {
+            System.err.println("注册JMX对象失败: ConnectionPool " + poolName + " - " + e.getMessage());
+        }
+    }
+
     /**
      * 获取连接池状态
      */
     public String getStatus() {
-        return String.format("连接池状态 - 总连接数: %d, 活跃连接数: %d, 空闲连接数: %d",
-                           totalConnections.get(), activeConnections.get(), idleConnections.size());
+        return "连接池状态 - " + getMetrics();
     }
 
     /**
@@ -241,11 +809,23 @@ public class ConnectionPool {
     public void shutdown() {
         shutdown = true;
         cleanupExecutor.shutdown();
+        fillerExecutor.shutdownNow();
+
+        ObjectName objectName = registeredMBean;
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                System.err.println("注销JMX对象失败: " + objectName + " - " + e.getMessage());
+            }
+            registeredMBean = null;
+        }
 
-        // 关闭所有连接
-        PooledConnection conn;
-        while ((conn = idleConnections.poll()) != null) {
-            closeConnection(conn);
+        // 关闭所有空闲连接，借出中的连接在归还时关闭
+        for (PooledConnection conn : bag.values()) {
+            if (bag.reserve(conn)) {
+                discardConnection(conn);
+            }
         }
 
         System.out.println("连接池已关闭");
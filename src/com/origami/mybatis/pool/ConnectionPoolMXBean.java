@@ -0,0 +1,90 @@
+package com.origami.mybatis.pool;
+
+/**
+ * 连接池的JMX接口，每个连接池注册一个：查看连接数、等待情况和耗时分布，软驱逐连接
+ * 耗时单位均为毫秒，分位数为直方图估算值
+ */
+public interface ConnectionPoolMXBean {
+
+    int getTotalConnections();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    /**
+     * 后台创建中的连接数
+     */
+    int getPendingConnections();
+
+    /**
+     * 正在等待连接的线程数
+     */
+    int getWaitingThreadCount();
+
+    int getMinIdle();
+
+    int getMaxSize();
+
+    /**
+     * 当前允许的最大连接数：启用自适应容量时为控制器的目标，否则等于最大连接数
+     */
+    int getTargetSize();
+
+    /**
+     * 自适应容量控制估算的平均占用连接数，未启用时为0
+     */
+    double getEstimatedDemand();
+
+    long getGrowCount();
+
+    long getShrinkCount();
+
+    long getAcquireCount();
+
+    /**
+     * 没有空闲连接、排队等待过的获取次数
+     */
+    long getWaitCount();
+
+    long getTimeoutCount();
+
+    double getAcquireP50Millis();
+
+    double getAcquireP99Millis();
+
+    double getAcquireMaxMillis();
+
+    double getUsageP50Millis();
+
+    double getUsageP99Millis();
+
+    double getUsageMaxMillis();
+
+    double getCreationAverageMillis();
+
+    double getCreationMaxMillis();
+
+    long getCreationFailureCount();
+
+    long getValidationFailureCount();
+
+    long getBrokenEvictionCount();
+
+    /**
+     * 达到最长存活时间被替换的连接数
+     */
+    long getRetirementCount();
+
+    long getKeepaliveFailureCount();
+
+    /**
+     * 软驱逐所有连接：空闲连接立即关闭，借出中的连接归还时关闭，由后台补充新连接
+     */
+    void softEvictConnections();
+
+    /**
+     * 清零统计
+     */
+    void resetMetrics();
+}
@@ -0,0 +1,129 @@
+package com.origami.mybatis.pool;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图
+ * 按微秒取2的幂分桶（第i个桶为 [2^(i-1), 2^i) 微秒，第0个桶为不足1微秒），每个桶是一个分段计数器，
+ * 记录只做一次位运算和一次无锁累加；分位数取所在桶的上界（不超过最大值），误差在2倍以内，足够判断量级。
+ */
+public class LatencyHistogram {
+
+    // 最后一个桶收纳 2^38 微秒（约3天）以上的耗时
+    private static final int BUCKETS = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时（纳秒）
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000;
+        int index = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[index].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(counts, totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * 直方图快照，不可变；耗时单位为毫秒
+     */
+    public static class Snapshot {
+        private final long count;
+        private final double meanMillis;
+        private final double maxMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+
+        Snapshot(long[] counts, long totalNanos, long maxNanos) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            this.count = total;
+            this.meanMillis = total == 0 ? 0 : totalNanos / 1_000_000.0 / total;
+            this.maxMillis = maxNanos / 1_000_000.0;
+            this.p50Millis = percentile(counts, total, 0.50, maxMillis);
+            this.p95Millis = percentile(counts, total, 0.95, maxMillis);
+            this.p99Millis = percentile(counts, total, 0.99, maxMillis);
+        }
+
+        private static double percentile(long[] counts, long total, double quantile, double maxMillis) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // 桶上界：2^i 微秒
+                    return Math.min((1L << i) / 1000.0, maxMillis);
+                }
+            }
+            return maxMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d次 平均%.2fms p50 %.2fms p95 %.2fms p99 %.2fms 最大%.2fms",
+                    count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis);
+        }
+    }
+}
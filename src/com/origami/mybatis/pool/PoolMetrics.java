@@ -0,0 +1,314 @@
+package com.origami.mybatis.pool;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接池统计
+ * 获取连接的等待时间、连接借出时长、建立连接的耗时使用 {@link LatencyHistogram}，其余为分段计数器，
+ * 借还路径上只做无锁累加；连接数、等待线程数等瞬时值在生成快照时由连接池填入。
+ */
+public class PoolMetrics {
+
+    private final LatencyHistogram acquireTime = new LatencyHistogram();
+    private final LatencyHistogram usageTime = new LatencyHistogram();
+    private final LatencyHistogram creationTime = new LatencyHistogram();
+
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder creationFailures = new LongAdder();
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder skippedValidations = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder brokenEvictions = new LongAdder();
+    private final LongAdder softEvictions = new LongAdder();
+    private final LongAdder retirements = new LongAdder();
+    private final LongAdder keepalives = new LongAdder();
+    private final LongAdder keepaliveFailures = new LongAdder();
+    private final LongAdder grows = new LongAdder();
+    private final LongAdder shrinks = new LongAdder();
+
+    /**
+     * 记录一次获取连接（成功或超时）的耗时
+     * @param waited 是否排队等待过
+     */
+    void recordAcquire(long nanos, boolean waited) {
+        acquireTime.record(nanos);
+        if (waited) {
+            waits.increment();
+        }
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * 记录一次借出时长（借出到归还）
+     */
+    void recordUsage(long nanos) {
+        usageTime.record(nanos);
+    }
+
+    void recordCreation(long nanos) {
+        creationTime.record(nanos);
+    }
+
+    void recordCreationFailure() {
+        creationFailures.increment();
+    }
+
+    void recordValidation(boolean skipped, boolean failed) {
+        if (skipped) {
+            skippedValidations.increment();
+            return;
+        }
+        validations.increment();
+        if (failed) {
+            validationFailures.increment();
+        }
+    }
+
+    void recordBrokenEviction() {
+        brokenEvictions.increment();
+    }
+
+    void recordSoftEviction(int count) {
+        softEvictions.add(count);
+    }
+
+    /**
+     * 连接达到最长存活时间被替换
+     */
+    void recordRetirement() {
+        retirements.increment();
+    }
+
+    void recordKeepalive(boolean failed) {
+        keepalives.increment();
+        if (failed) {
+            keepaliveFailures.increment();
+        }
+    }
+
+    /**
+     * 自适应容量控制调整了目标连接数
+     */
+    void recordResize(boolean grow) {
+        if (grow) {
+            grows.increment();
+        } else {
+            shrinks.increment();
+        }
+    }
+
+    /**
+     * 清零所有计数
+     */
+    public void reset() {
+        acquireTime.reset();
+        usageTime.reset();
+        creationTime.reset();
+        waits.reset();
+        timeouts.reset();
+        creationFailures.reset();
+        validations.reset();
+        skippedValidations.reset();
+        validationFailures.reset();
+        brokenEvictions.reset();
+        softEvictions.reset();
+        retirements.reset();
+        keepalives.reset();
+        keepaliveFailures.reset();
+        grows.reset();
+        shrinks.reset();
+    }
+
+    Snapshot snapshot(int totalConnections, int activeConnections, int idleConnections,
+                      int pendingConnections, int waitingThreads, int targetSize, double estimatedDemand) {
+        return new Snapshot(this, totalConnections, activeConnections, idleConnections, pendingConnections, waitingThreads,
+                targetSize, estimatedDemand);
+    }
+
+    /**
+     * 连接池统计快照，不可变
+     */
+    public static class Snapshot {
+        private final int totalConnections;
+        private final int activeConnections;
+        private final int idleConnections;
+        private final int pendingConnections;
+        private final int waitingThreads;
+        private final int targetSize;
+        private final double estimatedDemand;
+        private final LatencyHistogram.Snapshot acquireTime;
+        private final LatencyHistogram.Snapshot usageTime;
+        private final LatencyHistogram.Snapshot creationTime;
+        private final long waitCount;
+        private final long timeoutCount;
+        private final long creationFailureCount;
+        private final long validationCount;
+        private final long skippedValidationCount;
+        private final long validationFailureCount;
+        private final long brokenEvictionCount;
+        private final long softEvictionCount;
+        private final long retirementCount;
+        private final long keepaliveCount;
+        private final long keepaliveFailureCount;
+        private final long growCount;
+        private final long shrinkCount;
+
+        Snapshot(PoolMetrics metrics, int totalConnections, int activeConnections, int idleConnections,
+                 int pendingConnections, int waitingThreads, int targetSize, double estimatedDemand) {
+            this.totalConnections = totalConnections;
+            this.activeConnections = activeConnections;
+            this.idleConnections = idleConnections;
+            this.pendingConnections = pendingConnections;
+            this.waitingThreads = waitingThreads;
+            this.targetSize = targetSize;
+            this.estimatedDemand = estimatedDemand;
+            this.acquireTime = metrics.acquireTime.snapshot();
+            this.usageTime = metrics.usageTime.snapshot();
+            this.creationTime = metrics.creationTime.snapshot();
+            this.waitCount = metrics.waits.sum();
+            this.timeoutCount = metrics.timeouts.sum();
+            this.creationFailureCount = metrics.creationFailures.sum();
+            this.validationCount = metrics.validations.sum();
+            this.skippedValidationCount = metrics.skippedValidations.sum();
+            this.validationFailureCount = metrics.validationFailures.sum();
+            this.brokenEvictionCount = metrics.brokenEvictions.sum();
+            this.softEvictionCount = metrics.softEvictions.sum();
+            this.retirementCount = metrics.retirements.sum();
+            this.keepaliveCount = metrics.keepalives.sum();
+            this.keepaliveFailureCount = metrics.keepaliveFailures.sum();
+            this.growCount = metrics.grows.sum();
+            this.shrinkCount = metrics.shrinks.sum();
+        }
+
+        /**
+         * 总连接数（含后台创建中的连接）
+         */
+        public int getTotalConnections() {
+            return totalConnections;
+        }
+
+        public int getActiveConnections() {
+            return activeConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        /**
+         * 后台创建中的连接数
+         */
+        public int getPendingConnections() {
+            return pendingConnections;
+        }
+
+        public int getWaitingThreads() {
+            return waitingThreads;
+        }
+
+        /**
+         * 当前允许的最大连接数：启用自适应容量时为控制器的目标，否则为最大连接数
+         */
+        public int getTargetSize() {
+            return targetSize;
+        }
+
+        /**
+         * 自适应容量控制最近一次估算的平均占用连接数（λ × W），未启用时为0
+         */
+        public double getEstimatedDemand() {
+            return estimatedDemand;
+        }
+
+        public long getGrowCount() {
+            return growCount;
+        }
+
+        public long getShrinkCount() {
+            return shrinkCount;
+        }
+
+        /**
+         * 获取连接的耗时（含排队等待和超时）
+         */
+        public LatencyHistogram.Snapshot getAcquireTime() {
+            return acquireTime;
+        }
+
+        /**
+         * 连接借出时长
+         */
+        public LatencyHistogram.Snapshot getUsageTime() {
+            return usageTime;
+        }
+
+        /**
+         * 建立连接的耗时（成功的）
+         */
+        public LatencyHistogram.Snapshot getCreationTime() {
+            return creationTime;
+        }
+
+        public long getWaitCount() {
+            return waitCount;
+        }
+
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        public long getCreationFailureCount() {
+            return creationFailureCount;
+        }
+
+        public long getValidationCount() {
+            return validationCount;
+        }
+
+        public long getSkippedValidationCount() {
+            return skippedValidationCount;
+        }
+
+        public long getValidationFailureCount() {
+            return validationFailureCount;
+        }
+
+        public long getBrokenEvictionCount() {
+            return brokenEvictionCount;
+        }
+
+        public long getSoftEvictionCount() {
+            return softEvictionCount;
+        }
+
+        /**
+         * 达到最长存活时间被替换的连接数
+         */
+        public long getRetirementCount() {
+            return retirementCount;
+        }
+
+        public long getKeepaliveCount() {
+            return keepaliveCount;
+        }
+
+        public long getKeepaliveFailureCount() {
+            return keepaliveFailureCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("总连接数: %d (创建中 %d, 目标 %d), 活跃连接数: %d, 空闲连接数: %d, 等待线程: %d, "
+                            + "获取连接: %s, 等待: %d次, 超时: %d次, 借出时长: %s, 建立连接: %s, 建立失败: %d次, "
+                            + "有效性检查: %d (跳过 %d, 失败 %d), 连接级错误关闭: %d, 软驱逐: %d, 到期替换: %d, 保活: %d (失败 %d), 容量调整: 扩容%d次 缩容%d次 估算占用%.1f",
+                    totalConnections, pendingConnections, targetSize, activeConnections, idleConnections, waitingThreads,
+                    acquireTime, waitCount, timeoutCount, usageTime, creationTime, creationFailureCount,
+                    validationCount, skippedValidationCount, validationFailureCount, brokenEvictionCount, softEvictionCount,
+                    retirementCount, keepaliveCount, keepaliveFailureCount, growCount, shrinkCount, estimatedDemand);
+        }
+    }
+}
@@ -1,21 +1,115 @@
 package com.origami.mybatis.pool;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 连接池中的连接
+ * 借出期间修改过的连接属性（自动提交、隔离级别、只读、catalog、schema、网络超时）记为脏标记，
+ * 归还时只重置改过的属性；借用方没有关闭的Statement、没有提交的事务在归还时关闭/回滚，不会带给下一个借用方。
+ * 属性值缓存在本地，读取不访问数据库，设置为当前值时也不访问数据库。
+ */
 public class PooledConnection implements Connection {
 
+    // 连接状态，由 ConnectionBag 通过CAS切换
+    static final int STATE_NOT_IN_USE = 0;
+    static final int STATE_IN_USE = 1;
+    static final int STATE_REMOVED = -1;
+    static final int STATE_RESERVED = -2;
+
     private final Connection realConnection;
     private final ConnectionPool pool;
-    private boolean closed = false;
-    private long lastUsedTime;
+    private final AtomicInteger state = new AtomicInteger(STATE_NOT_IN_USE);
+    private final long createdAt;
+    // 0~1 的随机数，连接池据此错开每个连接的到期和保活时间
+    private final double jitter = ThreadLocalRandom.current().nextDouble();
+    private volatile long lastUsedTime;
+    // 最近一次保活ping成功的时间
+    private volatile long lastPingTime;
+    // 执行中出现连接级错误，归还时直接关闭
+    private volatile boolean broken = false;
+    // 已被软驱逐：空闲时立即关闭，借出中的归还时关闭
+    private volatile boolean evicted = false;
+
+    // 脏标记
+    private static final int DIRTY_AUTO_COMMIT = 1;
+    private static final int DIRTY_ISOLATION = 1 << 1;
+    private static final int DIRTY_READ_ONLY = 1 << 2;
+    private static final int DIRTY_CATALOG = 1 << 3;
+    private static final int DIRTY_SCHEMA = 1 << 4;
+    private static final int DIRTY_NETWORK_TIMEOUT = 1 << 5;
+
+    // 连接创建时的属性，归还时恢复为这些值
+    private final boolean defaultAutoCommit;
+    private final int defaultIsolation;
+    private final boolean defaultReadOnly;
+    private final String defaultCatalog;
+    private final String defaultSchema;
+    private final int defaultNetworkTimeout;
 
-    public PooledConnection(Connection realConnection, ConnectionPool pool) {
+    // 当前属性（连接同一时刻只被一个线程使用）
+    private boolean autoCommit;
+    private int isolation;
+    private boolean readOnly;
+    private String catalog;
+    private String schema;
+    private int networkTimeout;
+    private int dirtyBits;
+    // 非自动提交模式下创建过语句且尚未提交或回滚
+    private boolean commitPending;
+    // 借出期间创建的Statement，归还时关闭仍未关闭的；超过清理阈值时先移除已关闭的
+    private final List<Statement> openStatements = new ArrayList<>();
+    private int pruneThreshold = MIN_PRUNE_THRESHOLD;
+    private static final int MIN_PRUNE_THRESHOLD = 32;
+
+    // 借出时间点（毫秒和纳秒，纳秒用于统计借出时长）；泄漏检测时的借出位置（未启用泄漏检测时为null）
+    private volatile long borrowedAt;
+    private volatile long borrowedNanos;
+    private volatile Throwable borrowTrace;
+    private volatile boolean leakReported;
+
+    public PooledConnection(Connection realConnection, ConnectionPool pool) throws SQLException {
         this.realConnection = realConnection;
         this.pool = pool;
-        this.lastUsedTime = System.currentTimeMillis();
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedTime = createdAt;
+
+        this.defaultAutoCommit = realConnection.getAutoCommit();
+        this.defaultIsolation = realConnection.getTransactionIsolation();
+        this.defaultReadOnly = realConnection.isReadOnly();
+        this.defaultCatalog = realConnection.getCatalog();
+        this.defaultSchema = readSchema(realConnection);
+        this.defaultNetworkTimeout = readNetworkTimeout(realConnection);
+        this.autoCommit = defaultAutoCommit;
+        this.isolation = defaultIsolation;
+        this.readOnly = defaultReadOnly;
+        this.catalog = defaultCatalog;
+        this.schema = defaultSchema;
+        this.networkTimeout = defaultNetworkTimeout;
+    }
+
+    // 旧驱动不支持schema和网络超时，不跟踪
+    private static String readSchema(Connection connection) {
+        try {
+            return connection.getSchema();
+        } catch (SQLException | AbstractMethodError e) {
+            return null;
+        }
+    }
+
+    private static int readNetworkTimeout(Connection connection) {
+        try {
+            return connection.getNetworkTimeout();
+        } catch (SQLException | AbstractMethodError e) {
+            return -1;
+        }
     }
 
     public Connection getRealConnection() {
@@ -29,36 +123,203 @@ public class PooledConnection implements Connection {
     public void setLastUsedTime(long lastUsedTime) {
         this.lastUsedTime = lastUsedTime;
     }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * 保活ping成功，不改变最后使用时间（空闲清理仍按最后使用时间计算）
+     */
+    void markAlive(long now) {
+        lastPingTime = now;
+    }
+
+    /**
+     * 最近一次确认连接可用的时间：最后使用或保活ping成功
+     */
+    long getLastAliveTime() {
+        return Math.max(lastUsedTime, lastPingTime);
+    }
+
+    /**
+     * 标记连接已损坏（网络中断、服务端关闭等），归还时不再放回池中
+     */
+    public void markBroken() {
+        broken = true;
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    void markEvicted() {
+        evicted = true;
+    }
+
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * 归还时调用：关闭未关闭的Statement，回滚未提交的事务，只重置借出期间修改过的属性
+     */
+    void resetState() throws SQLException {
+        int closedStatements = 0;
+        for (Statement statement : openStatements) {
+            try {
+                if (!statement.isClosed()) {
+                    statement.close();
+                    closedStatements++;
+                }
+            } catch (SQLException e) {
+                System.err.println("关闭未关闭的Statement失败: " + e.getMessage());
+            }
+        }
+        openStatements.clear();
+        pruneThreshold = MIN_PRUNE_THRESHOLD;
+        if (closedStatements > 0) {
+            System.out.println("归还连接时关闭了 " + closedStatements + " 个未关闭的Statement");
+        }
+
+        if (commitPending && !autoCommit) {
+            realConnection.rollback();
+            System.out.println("归还连接时回滚了未提交的事务");
+        }
+        commitPending = false;
+
+        if (dirtyBits != 0) {
+            if ((dirtyBits & DIRTY_AUTO_COMMIT) != 0 && autoCommit != defaultAutoCommit) {
+                realConnection.setAutoCommit(defaultAutoCommit);
+                autoCommit = defaultAutoCommit;
+            }
+            if ((dirtyBits & DIRTY_ISOLATION) != 0 && isolation != defaultIsolation) {
+                realConnection.setTransactionIsolation(defaultIsolation);
+                isolation = defaultIsolation;
+            }
+            if ((dirtyBits & DIRTY_READ_ONLY) != 0 && readOnly != defaultReadOnly) {
+                realConnection.setReadOnly(defaultReadOnly);
+                readOnly = defaultReadOnly;
+            }
+            if ((dirtyBits & DIRTY_CATALOG) != 0 && defaultCatalog != null && !defaultCatalog.equals(catalog)) {
+                realConnection.setCatalog(defaultCatalog);
+                catalog = defaultCatalog;
+            }
+            if ((dirtyBits & DIRTY_SCHEMA) != 0 && defaultSchema != null && !defaultSchema.equals(schema)) {
+                realConnection.setSchema(defaultSchema);
+                schema = defaultSchema;
+            }
+            if ((dirtyBits & DIRTY_NETWORK_TIMEOUT) != 0 && defaultNetworkTimeout >= 0
+                    && networkTimeout != defaultNetworkTimeout) {
+                realConnection.setNetworkTimeout(Runnable::run, defaultNetworkTimeout);
+                networkTimeout = defaultNetworkTimeout;
+            }
+            dirtyBits = 0;
+        }
+    }
+
+    /**
+     * 登记新建的Statement；长事务中不断创建、关闭语句时，列表达到阈值就移除已关闭的，
+     * 阈值随剩余的未关闭语句数翻倍，摊销后每次登记仍是常数开销
+     */
+    private <T extends Statement> T track(T statement) {
+        if (openStatements.size() >= pruneThreshold) {
+            openStatements.removeIf(PooledConnection::isStatementClosed);
+            pruneThreshold = Math.max(MIN_PRUNE_THRESHOLD, openStatements.size() * 2);
+        }
+        openStatements.add(statement);
+        if (!autoCommit) {
+            commitPending = true;
+        }
+        return statement;
+    }
+
+    private static boolean isStatementClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 借出时记录借出时间点，启用泄漏检测时同时记录借出位置
+     */
+    void markBorrowed(long now, long nanoTime, Throwable trace) {
+        borrowedAt = now;
+        borrowedNanos = nanoTime;
+        borrowTrace = trace;
+        leakReported = false;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    long getBorrowedNanos() {
+        return borrowedNanos;
+    }
+
+    Throwable getBorrowTrace() {
+        return borrowTrace;
+    }
+
+    boolean isLeakReported() {
+        return leakReported;
+    }
+
+    void setLeakReported(boolean leakReported) {
+        this.leakReported = leakReported;
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    void setState(int newState) {
+        state.set(newState);
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return state.compareAndSet(expect, update);
+    }
     
     /**
-     * 重写close方法：归还连接到池中
+     * 重写close方法：归还连接到池中，由借出句柄 {@link ProxyConnection} 在第一次close时调用
+     * 借出状态切换为保留状态后再归还，重复close只有第一次生效；再次借出后可以正常归还
      */
     @Override
     public void close() throws SQLException {
-        if (!closed) {
-            closed = true;
+        if (state.compareAndSet(STATE_IN_USE, STATE_RESERVED)) {
             pool.returnConnection(this);
         }
     }
     
+    /**
+     * 对借用方而言，归还之后连接即为已关闭
+     */
     @Override
     public boolean isClosed() throws SQLException {
-        return closed;
+        return state.get() != STATE_IN_USE;
     }
     
     @Override
     public Statement createStatement() throws SQLException {
-        return realConnection.createStatement();
+        return track(realConnection.createStatement());
     }
     
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        return realConnection.prepareStatement(sql);
+        return track(realConnection.prepareStatement(sql));
     }
     
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
-        return realConnection.prepareCall(sql);
+        return track(realConnection.prepareCall(sql));
     }
     
     @Override
@@ -68,22 +329,28 @@ public class PooledConnection implements Connection {
     
     @Override
     public void setAutoCommit(boolean autoCommit) throws SQLException {
-        realConnection.setAutoCommit(autoCommit);
+        if (autoCommit != this.autoCommit) {
+            realConnection.setAutoCommit(autoCommit);
+            this.autoCommit = autoCommit;
+            dirtyBits |= DIRTY_AUTO_COMMIT;
+        }
     }
     
     @Override
     public boolean getAutoCommit() throws SQLException {
-        return realConnection.getAutoCommit();
+        return autoCommit;
     }
     
     @Override
     public void commit() throws SQLException {
         realConnection.commit();
+        commitPending = false;
     }
     
     @Override
     public void rollback() throws SQLException {
         realConnection.rollback();
+        commitPending = false;
     }
     
     @Override
@@ -93,32 +360,44 @@ public class PooledConnection implements Connection {
     
     @Override
     public void setReadOnly(boolean readOnly) throws SQLException {
-        realConnection.setReadOnly(readOnly);
+        if (readOnly != this.readOnly) {
+            realConnection.setReadOnly(readOnly);
+            this.readOnly = readOnly;
+            dirtyBits |= DIRTY_READ_ONLY;
+        }
     }
     
     @Override
     public boolean isReadOnly() throws SQLException {
-        return realConnection.isReadOnly();
+        return readOnly;
     }
     
     @Override
     public void setCatalog(String catalog) throws SQLException {
-        realConnection.setCatalog(catalog);
+        if (!Objects.equals(catalog, this.catalog)) {
+            realConnection.setCatalog(catalog);
+            this.catalog = catalog;
+            dirtyBits |= DIRTY_CATALOG;
+        }
     }
     
     @Override
     public String getCatalog() throws SQLException {
-        return realConnection.getCatalog();
+        return catalog;
     }
     
     @Override
     public void setTransactionIsolation(int level) throws SQLException {
-        realConnection.setTransactionIsolation(level);
+        if (level != isolation) {
+            realConnection.setTransactionIsolation(level);
+            isolation = level;
+            dirtyBits |= DIRTY_ISOLATION;
+        }
     }
     
     @Override
     public int getTransactionIsolation() throws SQLException {
-        return realConnection.getTransactionIsolation();
+        return isolation;
     }
     
     @Override
@@ -133,17 +412,17 @@ public class PooledConnection implements Connection {
     
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-        return realConnection.createStatement(resultSetType, resultSetConcurrency);
+        return track(realConnection.createStatement(resultSetType, resultSetConcurrency));
     }
     
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+        return track(realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency));
     }
     
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
-        return realConnection.prepareCall(sql, resultSetType, resultSetConcurrency);
+        return track(realConnection.prepareCall(sql, resultSetType, resultSetConcurrency));
     }
     
     @Override
@@ -188,32 +467,32 @@ public class PooledConnection implements Connection {
     
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return realConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+        return track(realConnection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
     }
     
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        return track(realConnection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
     }
     
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-        return realConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        return track(realConnection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
     }
     
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        return realConnection.prepareStatement(sql, autoGeneratedKeys);
+        return track(realConnection.prepareStatement(sql, autoGeneratedKeys));
     }
     
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        return realConnection.prepareStatement(sql, columnIndexes);
+        return track(realConnection.prepareStatement(sql, columnIndexes));
     }
     
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-        return realConnection.prepareStatement(sql, columnNames);
+        return track(realConnection.prepareStatement(sql, columnNames));
     }
     
     @Override
@@ -273,12 +552,16 @@ public class PooledConnection implements Connection {
     
     @Override
     public void setSchema(String schema) throws SQLException {
-        realConnection.setSchema(schema);
+        if (!Objects.equals(schema, this.schema)) {
+            realConnection.setSchema(schema);
+            this.schema = schema;
+            dirtyBits |= DIRTY_SCHEMA;
+        }
     }
     
     @Override
     public String getSchema() throws SQLException {
-        return realConnection.getSchema();
+        return schema;
     }
     
     @Override
@@ -288,12 +571,17 @@ public class PooledConnection implements Connection {
     
     @Override
     public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
-        realConnection.setNetworkTimeout(executor, milliseconds);
+        // 驱动不支持读取网络超时（未跟踪）时每次都设置
+        if (networkTimeout < 0 || milliseconds != networkTimeout) {
+            realConnection.setNetworkTimeout(executor, milliseconds);
+            networkTimeout = milliseconds;
+            dirtyBits |= DIRTY_NETWORK_TIMEOUT;
+        }
     }
     
     @Override
     public int getNetworkTimeout() throws SQLException {
-        return realConnection.getNetworkTimeout();
+        return networkTimeout < 0 ? realConnection.getNetworkTimeout() : networkTimeout;
     }
     
     @Override
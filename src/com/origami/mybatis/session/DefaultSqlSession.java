@@ -5,7 +5,12 @@ import com.origami.mybatis.annotation.Insert;
 import com.origami.mybatis.annotation.Select;
 import com.origami.mybatis.annotation.Update;
 import com.origami.mybatis.config.Configuration;
+import com.origami.mybatis.cache.CacheKey;
 import com.origami.mybatis.cache.CacheManager;
+import com.origami.mybatis.cache.LocalCache;
+import com.origami.mybatis.cache.NullValue;
+import com.origami.mybatis.cache.TransactionalCache;
+import com.origami.mybatis.executor.SingleFlight;
 import com.origami.mybatis.executor.SqlExecutor;
 import com.origami.mybatis.handler.ResultSetMapper;
 import com.origami.mybatis.exception.SqlExecutionException;
@@ -19,6 +24,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class DefaultSqlSession implements SqlSession {
 /**
@@ -28,8 +35,11 @@ public class DefaultSqlSession implements SqlSession {
  * 3. 工厂模式 (Factory Pattern): 内部的 getMapper 方法扮演了 Mapper 实例的工厂，负责创建代理对象。
  */
 
-    // 缓存管理器
+    // 缓存管理器（二级缓存，跨会话共享）
     private final CacheManager cacheManager;
+    
+    // 一级缓存，本会话独有
+    private final LocalCache localCache;
 
     // SQL执行器
     private static final SqlExecutor sqlExecutor = new SqlExecutor();
@@ -41,8 +51,12 @@ public class DefaultSqlSession implements SqlSession {
     protected Connection transactionConnection;
     protected boolean inTransaction = false;
     
-    // 事务同步锁
-    private final Object transactionLock = new Object();
+    // 当前事务的缓存缓冲区，提交时才写入共享缓存
+    private TransactionalCache transactionalCache;
+    
+    // 事务同步锁：持锁期间会获取连接、提交或回滚（网络I/O），使用 ReentrantLock 而不是 synchronized，
+    // 虚拟线程在锁内阻塞时可以让出载体线程
+    private final ReentrantLock transactionLock = new ReentrantLock();
     
     // 配置对象
     private Configuration configuration;
@@ -50,11 +64,14 @@ public class DefaultSqlSession implements SqlSession {
     // 构造函数
     public DefaultSqlSession(CacheManager cacheManager) {
         this.cacheManager = cacheManager != null ? cacheManager : new CacheManager();
+        this.localCache = new LocalCache(256);
     }
     
     public DefaultSqlSession(Configuration configuration) {
         this.configuration = configuration;
+        // 禁用缓存时为null
         this.cacheManager = configuration.getCacheManager();
+        this.localCache = new LocalCache(configuration.getLocalCacheSize());
     }
 
     /**
@@ -67,6 +84,10 @@ public class DefaultSqlSession implements SqlSession {
     @SuppressWarnings("unchecked")
     public <T> T getMapper(Class<T> clazz) {
         System.out.println("创建Mapper代理对象：" + clazz.getSimpleName());
+        // 注册时预先解析SQL，请求路径上只读取解析结果
+        if (cacheManager != null) {
+            cacheManager.registerMapper(clazz);
+        }
         Class<?>[] interfaces = new Class[]{clazz};
         Object mapper = Proxy.newProxyInstance(clazz.getClassLoader(), interfaces, this::invoke);
         return (T) mapper;
@@ -74,7 +95,8 @@ public class DefaultSqlSession implements SqlSession {
 
     @Override
     public void beginTransaction() {
-        synchronized (transactionLock) {
+        transactionLock.lock();
+        try {
             if (inTransaction) {
                 throw new RuntimeException("事务已经开启，不能重复开启");
             }
@@ -84,45 +106,66 @@ public class DefaultSqlSession implements SqlSession {
                 }
                 transactionConnection = configuration.getConnection();
                 transactionConnection.setAutoCommit(false);
+                if (cacheManager != null) {
+                    transactionalCache = new TransactionalCache(cacheManager);
+                }
                 inTransaction = true;
                 System.out.println("事务已开启");
             } catch (Exception e) {
                 throw new RuntimeException("开启事务失败", e);
             }
+        } finally {
+            transactionLock.unlock();
         }
     }
 
     @Override
     public void commit() {
-        synchronized (transactionLock) {
+        transactionLock.lock();
+        try {
             if (!inTransaction || transactionConnection == null) {
                 throw new RuntimeException("没有事务可以提交");
             }
             try {
                 transactionConnection.commit();
                 System.out.println("\n事务已提交");
+                // 数据库提交成功后才清理共享缓存并发布事务内的查询结果
+                if (transactionalCache != null) {
+                    transactionalCache.commit();
+                }
+                advanceWriteGeneration();
+                localCache.clear();
             } catch (Exception e) {
                 throw new RuntimeException("提交事务失败", e);
             } finally {
                 closeTransaction();
             }
+        } finally {
+            transactionLock.unlock();
         }
     }
 
     @Override
     public void rollback() {
-        synchronized (transactionLock) {
+        transactionLock.lock();
+        try {
             if (!inTransaction || transactionConnection == null) {
                 throw new RuntimeException("没有事务可以回滚");
             }
             try {
                 transactionConnection.rollback();
                 System.out.println("事务已回滚");
+                if (transactionalCache != null) {
+                    transactionalCache.rollback();
+                }
+                localCache.clear();
             } catch (Exception e) {
                 throw new RuntimeException("回滚事务失败", e);
             } finally {
                 closeTransaction();
             }
+        } finally {
+            transactionLock.unlock();
         }
     }
 
@@ -131,7 +174,8 @@ public class DefaultSqlSession implements SqlSession {
         if (inTransaction) {
             rollback();
         }
-        cacheManager.clear();
+        // 只清空本会话的一级缓存，二级缓存由SqlSessionFactory管理
+        localCache.clear();
         System.out.println("SqlSession已关闭");
     }
     /**
@@ -184,18 +228,24 @@ public class DefaultSqlSession implements SqlSession {
      * 处理增删改操作
      */
     private int handleModification(String sql, Object[] args) {
-        // 提取表名并清理缓存
-        String tableName = cacheManager.extractTableNameFromSQL(sql);
-        if (tableName != null) {
-            cacheManager.clearByTable(tableName);
-        } else {
-            cacheManager.clearAll();//找不到表名清空所有缓存
-        }
-        
         Connection connection = null;
         try {
             connection = getConnection();
-            return sqlExecutor.executeUpdate(connection, sql, args);
+            int rows = sqlExecutor.executeUpdate(connection, sql, args);
+            localCache.clear();
+            // 写成功后按主键或SQL涉及的表清理缓存，找不到表名时清空所有缓存；
+            // 事务内只暂存清理操作，提交后才作用于共享缓存
+            if (cacheManager != null) {
+                if (inTransaction && transactionalCache != null) {
+                    transactionalCache.invalidate(sql, args);
+                } else {
+                    cacheManager.invalidate(sql, args);
+                }
+            }
+            if (!inTransaction) {
+                advanceWriteGeneration();
+            }
+            return rows;
         } catch (SQLException e) {
             throw new RuntimeException("执行更新操作时出错", e);
         } finally {
@@ -209,37 +259,73 @@ public class DefaultSqlSession implements SqlSession {
     private Object handleQuery(Method method, Object[] args) {
         Select annotation = method.getAnnotation(Select.class);
         String selectSql = annotation.value();
-        String cacheKey = cacheManager.generateCacheKey(selectSql, args, method.getReturnType());
+        CacheKey cacheKey = new CacheKey(CacheKey.statementIdOf(method), selectSql, method.getReturnType(), args);
+
+        boolean cacheable = cacheManager != null && cacheManager.isCacheable(cacheKey);
+
+        if (cacheable) {
+            // 缓存中的 NullValue 表示查询结果为null，命中后还原
+            Object cached = localCache.get(cacheKey);
+            if (cached != null) {
+                System.out.println("一级缓存命中");
+                return NullValue.unwrap(cached);
+            }
+            if (inTransaction && transactionalCache != null) {
+                // 事务内优先读本事务暂存的结果，写过的表不读共享缓存
+                cached = transactionalCache.get(cacheKey, selectSql);
+            } else {
+                // 二级缓存临近过期时在后台用独立连接重新查询
+                Callable<Object> reloader = configuration != null
+                        ? () -> NullValue.wrap(reloadQuery(method, selectSql, args)) : null;
+                cached = cacheManager.get(cacheKey, reloader);
+            }
+            if (cached != null) {
+                // 回填到一级缓存
+                localCache.put(cacheKey, cached);
+                System.out.println("缓存命中");
+                return NullValue.unwrap(cached);
+            }
+        }
 
-        if (cacheManager.containsKey(cacheKey)) {
-            System.out.println("缓存命中");
-            return cacheManager.get(cacheKey);
+        // 事务外的相同查询合并执行，事务内可能读到本事务未提交的数据，不与其他会话合并
+        SingleFlight<CacheKey> singleFlight = configuration != null ? configuration.getSingleFlight() : null;
+        if (singleFlight == null || inTransaction) {
+            return queryDatabase(method, selectSql, args, cacheKey, cacheable);
         }
+        // 只合并写操作之后开始的查询：有二级缓存时按涉及的表的最近清理时刻区分，否则按全局写代数
+        long generation = cacheManager != null ? cacheManager.getInvalidationStamp(selectSql) : singleFlight.getWriteGeneration();
+        try {
+            return singleFlight.execute(cacheKey, generation, () -> queryDatabase(method, selectSql, args, cacheKey, cacheable));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SqlExecutionException(selectSql, args, e);
+        }
+    }
+
+    /**
+     * 查询数据库并写入缓存
+     */
+    private Object queryDatabase(Method method, String selectSql, Object[] args, CacheKey cacheKey, boolean cacheable) {
         Connection connection = null;
+        // 查询开始前的失效时钟，查询期间涉及的表被清理过时结果不写入二级缓存
+        long loadStamp = cacheable ? cacheManager.currentStamp() : 0;
         try {
             connection = getConnection();
-            Object result = sqlExecutor.executeQuery(connection, selectSql, args, rs -> {
-                Class<?> returnType = method.getReturnType();
-                if (returnType == Integer.class) {
-                    return rs.next() ? rs.getInt(1) : 0;
-                }
-                if (returnType == List.class) {
-                    // 处理泛型返回类型，绕过类型擦除
-                    // Java 的类型擦除 (Type Erasure) 会在运行时将 List<Account> 变为 List，无法直接获取泛型类型 Account。
-                    // 但通过 Method.getGenericReturnType() 可以获取到带有泛型参数的 Type 对象 (ParameterizedType)，
-                    // 从而在运行时动态地拿到泛型的实际类型 (Account.class)，实现精准的结果集映射。
-                    Type genericReturnType = method.getGenericReturnType();
-                    if (genericReturnType instanceof ParameterizedType) {
-                        Class<?> elementType = (Class<?>) ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
-                        return resultSetMapper.mapResultSetToList(rs, elementType);
-                    }
-                }
-                if (returnType == Map.class) {
-                    return rs.next() ? resultSetMapper.mapResultSetToMap(rs) : new HashMap<>();
+            long start = System.nanoTime();
+            Object result = executeSelect(connection, method, selectSql, args);
+            if (cacheable) {
+                cacheManager.recordLoad(cacheKey, System.nanoTime() - start);
+                // 查不到数据也缓存（以 NullValue 占位），避免不存在的ID每次都查询数据库
+                Object value = NullValue.wrap(result);
+                localCache.put(cacheKey, value);
+                if (inTransaction && transactionalCache != null) {
+                    // 事务内读到的数据可能未提交，暂存到提交时再发布
+                    transactionalCache.put(cacheKey, value, selectSql, loadStamp);
+                } else {
+                    cacheManager.putWithTable(cacheKey, value, selectSql, loadStamp);
                 }
-                return rs.next() ? resultSetMapper.mapResultSetToObject(rs, returnType) : null;
-            });
-            cacheManager.putWithTable(cacheKey, result, selectSql);
+            }
             return result;
         } catch (Exception e) {
             throw new SqlExecutionException(selectSql, args, e);
@@ -248,6 +334,51 @@ public class DefaultSqlSession implements SqlSession {
         }
     }
 
+    /**
+     * 没有二级缓存时推进查询合并的全局写代数，之后的查询不再合并写操作之前开始的查询
+     */
+    private void advanceWriteGeneration() {
+        if (cacheManager == null && configuration != null && configuration.getSingleFlight() != null) {
+            configuration.getSingleFlight().advanceWriteGeneration();
+        }
+    }
+
+    /**
+     * 缓存后台刷新：从连接池取独立连接重新查询，结果由缓存自行替换
+     */
+    private Object reloadQuery(Method method, String selectSql, Object[] args) throws SQLException {
+        try (Connection connection = configuration.getConnection()) {
+            return executeSelect(connection, method, selectSql, args);
+        }
+    }
+
+    /**
+     * 执行查询并按方法返回类型映射结果
+     */
+    private Object executeSelect(Connection connection, Method method, String selectSql, Object[] args) {
+        return sqlExecutor.executeQuery(connection, selectSql, args, rs -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == Integer.class) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+            if (returnType == List.class) {
+                // 处理泛型返回类型，绕过类型擦除
+                // Java 的类型擦除 (Type Erasure) 会在运行时将 List<Account> 变为 List，无法直接获取泛型类型 Account。
+                // 但通过 Method.getGenericReturnType() 可以获取到带有泛型参数的 Type 对象 (ParameterizedType)，
+                // 从而在运行时动态地拿到泛型的实际类型 (Account.class)，实现精准的结果集映射。
+                Type genericReturnType = method.getGenericReturnType();
+                if (genericReturnType instanceof ParameterizedType) {
+                    Class<?> elementType = (Class<?>) ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
+                    return resultSetMapper.mapResultSetToList(rs, elementType);
+                }
+            }
+            if (returnType == Map.class) {
+                return rs.next() ? resultSetMapper.mapResultSetToMap(rs) : new HashMap<>();
+            }
+            return rs.next() ? resultSetMapper.mapResultSetToObject(rs, returnType) : null;
+        });
+    }
+
 
     /**
      * 获取增删改操作的SQL
@@ -269,7 +400,8 @@ public class DefaultSqlSession implements SqlSession {
      * 获取连接（事务感知）
      */
     private Connection getConnection() throws SQLException {
-        synchronized (transactionLock) {
+        transactionLock.lock();
+        try {
             if (inTransaction && transactionConnection != null) {
                 return transactionConnection;
             }
@@ -277,6 +409,8 @@ public class DefaultSqlSession implements SqlSession {
                 throw new SQLException("Configuration未初始化，无法获取数据库连接");
             }
             return configuration.getConnection();
+        } finally {
+            transactionLock.unlock();
         }
     }
 
@@ -285,12 +419,7 @@ public class DefaultSqlSession implements SqlSession {
      */
     private void closeTransaction() {
         if (transactionConnection != null) {
-            try {
-                transactionConnection.setAutoCommit(true);
-            } catch (Exception e) {
-                System.err.println("恢复自动提交模式失败: " + e.getMessage());
-            }
-            
+            // 自动提交模式由连接池在归还时按脏标记恢复，这里不再多一次往返
             try {
                 transactionConnection.close();
             } catch (Exception e) {
@@ -299,6 +428,7 @@ public class DefaultSqlSession implements SqlSession {
         }
         
         transactionConnection = null;
+        transactionalCache = null;
         inTransaction = false;
     }
 
@@ -36,14 +36,19 @@ public class DefaultSqlSessionFactory implements SqlSessionFactory {
     public void shutdown() {
         System.out.println("SqlSessionFactory正在关闭...");
         
-        // 清空二级缓存
+        // 保存缓存快照（已配置时）后清空二级缓存
         if (configuration.getCacheManager() != null) {
+            configuration.getCacheManager().saveSnapshot();
             configuration.getCacheManager().clearAll();
+            configuration.getCacheManager().shutdown();
             System.out.println("二级缓存已清空");
         }
         
         // 关闭连接池
         System.out.println(configuration.getConnectionPoolStatus());
+        if (configuration.getConnectionPool() != null) {
+            configuration.getConnectionPool().shutdown();
+        }
         System.out.println("SqlSessionFactory已关闭");
     }
 }
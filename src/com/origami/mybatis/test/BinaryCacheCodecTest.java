@@ -0,0 +1,123 @@
+package com.origami.mybatis.test;
+
+import com.origami.mybatis.cache.BinaryCacheCodec;
+import com.origami.mybatis.cache.NullValue;
+import com.origami.mybatis.pojo.Account;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec();
+
+    private Object roundTrip(Object value) {
+        return codec.decode(codec.encode(value));
+    }
+
+    @Test
+    public void testScalarRoundTrip() {
+        assertNull(roundTrip(null));
+        assertEquals(Boolean.TRUE, roundTrip(true));
+        assertEquals(Integer.MIN_VALUE, roundTrip(Integer.MIN_VALUE));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE));
+        assertEquals((short) -7, roundTrip((short) -7));
+        assertEquals((byte) 3, roundTrip((byte) 3));
+        assertEquals(1.5d, roundTrip(1.5d));
+        assertEquals(2.5f, roundTrip(2.5f));
+        assertEquals("中文 and ascii", roundTrip("中文 and ascii"));
+        assertEquals(new BigDecimal("12345.6789"), roundTrip(new BigDecimal("12345.6789")));
+        assertEquals(new BigInteger("-98765432109876543210"), roundTrip(new BigInteger("-98765432109876543210")));
+        // 负结果标记解码后仍是同一个单例
+        assertSame(NullValue.INSTANCE, roundTrip(NullValue.INSTANCE));
+    }
+
+    @Test
+    public void testCollectionRoundTrip() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("name", "张三");
+        row.put("money", new BigDecimal("100.00"));
+        row.put("remark", null);
+        List<Object> rows = new ArrayList<>();
+        rows.add(row);
+        rows.add(new HashMap<>(row));
+        rows.add(Arrays.asList(1L, "x", null));
+
+        Object decoded = roundTrip(rows);
+        assertEquals(rows, decoded);
+        // LinkedHashMap 保持列顺序
+        assertEquals(new ArrayList<>(row.keySet()),
+                new ArrayList<>(((Map<?, ?>) ((List<?>) decoded).get(0)).keySet()));
+    }
+
+    @Test
+    public void testBeanRoundTrip() {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            accounts.add(new Account(i, "用户" + i, BigDecimal.valueOf(1000 + i), i == 1 ? null : "2025-08-26 18:00:00"));
+        }
+
+        List<?> decoded = (List<?>) roundTrip(accounts);
+        assertEquals(accounts.size(), decoded.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            Account expected = accounts.get(i);
+            Account actual = (Account) decoded.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getMoney(), actual.getMoney());
+            assertEquals(expected.getCreateTime(), actual.getCreateTime());
+        }
+    }
+
+    @Test
+    public void testSharedReferenceIsNotCycle() {
+        // 同一个对象出现多次但不构成环，可以正常编码
+        Account shared = new Account(1, "共享", BigDecimal.ONE, null);
+        List<Object> list = new ArrayList<>(Arrays.asList(shared, shared));
+        List<?> decoded = (List<?>) roundTrip(list);
+        assertEquals(2, decoded.size());
+        assertEquals("共享", ((Account) decoded.get(1)).getName());
+    }
+
+    @Test
+    public void testCycleRejected() {
+        List<Object> list = new ArrayList<>();
+        list.add(list);
+        try {
+            codec.encode(list);
+            fail("循环引用应当被拒绝");
+        } catch (IllegalArgumentException expected) {
+            System.out.println("循环引用: " + expected.getMessage());
+        }
+    }
+
+    @Test
+    public void testDeepNestingRejected() {
+        List<Object> root = new ArrayList<>();
+        List<Object> current = root;
+        for (int i = 0; i < 1000; i++) {
+            List<Object> child = new ArrayList<>();
+            current.add(child);
+            current = child;
+        }
+        try {
+            codec.encode(root);
+            fail("过深的嵌套应当被拒绝");
+        } catch (IllegalArgumentException expected) {
+            System.out.println("嵌套过深: " + expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.origami.mybatis.test;
+
+import com.origami.mybatis.pool.ConnectionPool;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 连接池借用、交接、超时和取消等待，使用内存中的假驱动，不需要数据库
+ */
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:fake:pool";
+    private static final FakeDriver DRIVER = new FakeDriver();
+
+    private ConnectionPool pool;
+
+    @BeforeClass
+    public static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(DRIVER);
+    }
+
+    @After
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 只有一个连接的连接池
+     */
+    private ConnectionPool singleConnectionPool() {
+        pool = new ConnectionPool(URL, "test", "test", 1, 1, 300, 5);
+        return pool;
+    }
+
+    private static Connection raw(Connection connection) throws SQLException {
+        return connection.unwrap(Connection.class);
+    }
+
+    private static void awaitWaiters(ConnectionPool pool, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getWaitingThreadCount() != count) {
+            assertTrue("等待线程数未达到 " + count, System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testReturnedConnectionHandedToWaiter() throws Exception {
+        ConnectionPool pool = singleConnectionPool();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Connection held = pool.getConnection();
+            Connection rawHeld = raw(held);
+            Future<Connection> waiter = executor.submit(() -> {
+                try (Connection connection = pool.getConnection()) {
+                    return raw(connection);
+                }
+            });
+            awaitWaiters(pool, 1);
+
+            held.close();
+            // 归还的连接直接交给等待者，没有新建连接
+            assertSame(rawHeld, waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(1, pool.getTotalConnections());
+            assertEquals(0, pool.getActiveConnections());
+            assertEquals(1, pool.getIdleConnections());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception {
+        ConnectionPool pool = singleConnectionPool();
+        pool.setConnectionTimeoutMs(100);
+        Connection held = pool.getConnection();
+
+        long start = System.nanoTime();
+        try {
+            pool.getConnection();
+            fail("连接池耗尽时应当超时");
+        } catch (SQLException expected) {
+            System.out.println("获取连接超时: " + expected.getMessage());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, pool.getTimeoutCount());
+        assertEquals(0, pool.getWaitingThreadCount());
+
+        // 超时的等待者不会占用之后归还的连接
+        held.close();
+        assertEquals(1, pool.getIdleConnections());
+        pool.getConnection().close();
+    }
+
+    @Test
+    public void testInterruptedWaiterCancelled() throws Exception {
+        ConnectionPool pool = singleConnectionPool();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Connection held = pool.getConnection();
+        Connection rawHeld = raw(held);
+
+        Thread waiter = new Thread(() -> {
+            try {
+                pool.getConnection().close();
+            } catch (SQLException e) {
+                interrupted.set(e.getCause() instanceof InterruptedException && Thread.currentThread().isInterrupted());
+            }
+        });
+        waiter.start();
+        awaitWaiters(pool, 1);
+        waiter.interrupt();
+        waiter.join(5000);
+        assertTrue(interrupted.get());
+        assertEquals(0, pool.getWaitingThreadCount());
+
+        // 已取消的等待者不会收到交接，归还的连接回到空闲列表
+        held.close();
+        assertEquals(1, pool.getIdleConnections());
+        pool.setConnectionTimeoutMs(100);
+        try (Connection connection = pool.getConnection()) {
+            assertSame(rawHeld, raw(connection));
+        }
+    }
+
+    @Test
+    public void testConcurrentBorrowReturn() throws Exception {
+        pool = new ConnectionPool(URL, "test", "test", 2, 4, 300, 5);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger failures = new AtomicInteger();
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        try {
+                            pool.getConnection().close();
+                        } catch (SQLException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(0, pool.getWaitingThreadCount());
+        assertTrue(pool.getTotalConnections() <= 4);
+        assertEquals(pool.getTotalConnections(), pool.getIdleConnections() + pool.getPendingConnections());
+    }
+
+    /**
+     * 返回内存连接的假驱动：连接只记录关闭状态，unwrap 返回连接本身
+     */
+    private static class FakeDriver implements Driver {
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(FakeDriver.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isClosed":
+                                return closed.get();
+                            case "isValid":
+                                return !closed.get();
+                            case "close":
+                                closed.set(true);
+                                return null;
+                            case "getAutoCommit":
+                                return true;
+                            case "getTransactionIsolation":
+                                return Connection.TRANSACTION_REPEATABLE_READ;
+                            case "unwrap":
+                                return proxy;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return URL;
+                            default:
+                                return defaultValue(method.getReturnType());
+                        }
+                    });
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
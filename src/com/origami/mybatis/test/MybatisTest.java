@@ -1,16 +1,30 @@
 package com.origami.mybatis.test;
 
 import com.origami.mybatis.config.Configuration;
+import com.origami.mybatis.config.ConfigurationBuilder;
 import com.origami.mybatis.mapper.AccountMapper;
 import com.origami.mybatis.pojo.Account;
+import com.origami.mybatis.pool.ConnectionPool;
 import com.origami.mybatis.session.SqlSession;
 import com.origami.mybatis.session.SqlSessionFactory;
 import com.origami.mybatis.session.SqlSessionFactoryBuilder;
+import org.junit.Assume;
 import org.junit.Test;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MybatisTest {
 
@@ -157,4 +171,115 @@ public class MybatisTest {
             session.close();
         }
     }
+
+    /**
+     * 虚拟线程压测：10000个虚拟线程同时查询，连接数远少于线程数，连接池饱和后按顺序排队；
+     * 等待连接、获取事务锁时不能占住载体线程，否则心跳虚拟线程得不到调度（JDK 21 之前跳过）。
+     * 分别在关闭和开启二级缓存、查询合并的配置下各压测一轮
+     */
+    @Test
+    public void testVirtualThreadLoad() throws Exception {
+        ExecutorService probe = newVirtualThreadExecutor();
+        Assume.assumeTrue(probe != null);
+        probe.shutdown();
+
+        // MySQL驱动8.x内部使用synchronized，执行SQL期间会占住载体线程；
+        // 连接数少于载体线程数时，剩余的载体线程能否调度其他虚拟线程只取决于框架本身
+        int maxSize = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+        // 第一轮关闭缓存和查询合并，每个查询都借用连接，连接池一定饱和
+        runVirtualThreadLoad("无缓存", maxSize, Configuration.builder()
+            .queryCoalescing(false, 0)
+            .disableCache());
+        // 第二轮使用默认的二级缓存和查询合并，覆盖缓存、合并等待与虚拟线程的组合
+        runVirtualThreadLoad("二级缓存+查询合并", maxSize, Configuration.builder()
+            .queryCoalescing(true, 60 * 1000L));
+    }
+
+    private static void runVirtualThreadLoad(String name, int maxSize, ConfigurationBuilder builder) throws Exception {
+        System.out.println("=== 虚拟线程压测（" + name + "） ===");
+        Configuration config = builder
+            .database("jdbc.properties")
+            .connectionPool(maxSize, maxSize)
+            .connectionTimeout(60 * 1000L)
+            .build();
+        boolean cached = config.getCacheManager() != null;
+        SqlSessionFactory factory = new SqlSessionFactoryBuilder().build(config);
+        ConnectionPool pool = config.getConnectionPool();
+        ExecutorService executor = newVirtualThreadExecutor();
+
+        int threads = 10000;
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger maxWaiting = new AtomicInteger();
+        AtomicLong maxHeartbeatDelayNanos = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                BigDecimal money = BigDecimal.valueOf(i % 1000);
+                futures.add(executor.submit(() -> {
+                    SqlSession session = factory.openSession(true);
+                    try {
+                        session.getMapper(AccountMapper.class).countAccountsByMoney(money);
+                        completed.incrementAndGet();
+                    } finally {
+                        session.close();
+                    }
+                    return null;
+                }));
+            }
+            // 心跳：全部提交后（连接池已饱和）每10毫秒醒来一次，载体线程被占住时醒来的延迟会明显变大
+            Future<?> heartbeat = executor.submit(() -> {
+                while (running.get()) {
+                    long sleepStart = System.nanoTime();
+                    Thread.sleep(10);
+                    long delay = System.nanoTime() - sleepStart - TimeUnit.MILLISECONDS.toNanos(10);
+                    maxHeartbeatDelayNanos.accumulateAndGet(delay, Math::max);
+                    maxWaiting.accumulateAndGet(pool.getWaitingThreadCount(), Math::max);
+                }
+                return null;
+            });
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            running.set(false);
+            heartbeat.get();
+
+            System.out.println("虚拟线程: " + threads + ", 连接数上限: " + maxSize + ", 耗时: " + elapsedMs + "ms, 最多等待线程: "
+                    + maxWaiting.get() + ", 借用连接次数: " + pool.getAcquireCount()
+                    + ", 心跳最大延迟: " + TimeUnit.NANOSECONDS.toMillis(maxHeartbeatDelayNanos.get()) + "ms");
+            System.out.println(pool.getStatus());
+
+            assertEquals(threads, completed.get());
+            assertTrue("连接数不应超过上限", pool.getTotalConnections() <= maxSize);
+            if (cached) {
+                // 1000种参数，重复的查询由缓存或合并的查询返回，不再借用连接；
+                // 命中缓存的虚拟线程都处于可运行状态，心跳排在它们之后，延迟只反映CPU负载，不作为载体线程饥饿的判断
+                assertTrue("缓存和查询合并未生效，借用连接次数: " + pool.getAcquireCount(), pool.getAcquireCount() < threads);
+            } else {
+                assertTrue("连接池应达到饱和", maxWaiting.get() > 0);
+                assertTrue("载体线程饥饿，心跳最大延迟: " + TimeUnit.NANOSECONDS.toMillis(maxHeartbeatDelayNanos.get()) + "ms",
+                        maxHeartbeatDelayNanos.get() < TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            running.set(false);
+            executor.shutdown();
+            factory.shutdown();
+        }
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，代码仍可用JDK 8编译；JDK 21 之前返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
 }
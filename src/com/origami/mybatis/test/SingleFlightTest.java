@@ -0,0 +1,149 @@
+package com.origami.mybatis.test;
+
+import com.origami.mybatis.executor.SingleFlight;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    /**
+     * 启动leader并等待它进入查询，leader阻塞到 release 打开
+     */
+    private static Future<Object> startLeader(ExecutorService executor, SingleFlight<String> singleFlight, String key,
+                                              long generation, CountDownLatch release, Object result) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Object> leader = executor.submit(() -> singleFlight.execute(key, generation, () -> {
+            started.countDown();
+            release.await();
+            return result;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return leader;
+    }
+
+    @Test
+    public void testConcurrentCallsCoalesced() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>(5000);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS + 1);
+        try {
+            List<Object> rows = new ArrayList<>(Arrays.asList("a", "b"));
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Object> leader = startLeader(executor, singleFlight, "q", 0, release, rows);
+
+            AtomicInteger followerLoads = new AtomicInteger();
+            List<Future<Object>> followers = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                followers.add(executor.submit(() -> singleFlight.execute("q", () -> {
+                    followerLoads.incrementAndGet();
+                    return null;
+                })));
+            }
+            // 等待者进入等待后再放行leader
+            Thread.sleep(200);
+            release.countDown();
+
+            assertSame(rows, leader.get(5, TimeUnit.SECONDS));
+            for (Future<Object> follower : followers) {
+                Object result = follower.get(5, TimeUnit.SECONDS);
+                assertEquals(rows, result);
+                // 等待者拿到的是副本
+                assertNotSame(rows, result);
+            }
+            assertEquals(0, followerLoads.get());
+            assertEquals(0, singleFlight.inFlightCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExceptionPropagated() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>(5000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Object> leader = executor.submit(() -> singleFlight.execute("q", () -> {
+                started.countDown();
+                release.await();
+                throw new IllegalStateException("查询失败");
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Object> follower = executor.submit(() -> singleFlight.execute("q", () -> "不应执行"));
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<Object> future : Arrays.asList(leader, follower)) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("应当抛出leader的异常");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+            // 失败的查询不会残留，之后的调用重新执行
+            assertEquals("ok", singleFlight.execute("q", () -> "ok"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNewerGenerationNotCoalesced() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>(5000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Object> stale = startLeader(executor, singleFlight, "q", 1, release, "写之前");
+
+            // 同代数的查询合并
+            Future<Object> follower = executor.submit(() -> singleFlight.execute("q", 1, () -> "不应执行"));
+            Thread.sleep(200);
+            // 写操作之后的查询要求更高的代数，另起一次查询，不等待写之前开始的查询
+            assertEquals("写之后", singleFlight.execute("q", 2, () -> "写之后"));
+            release.countDown();
+            assertEquals("写之前", stale.get(5, TimeUnit.SECONDS));
+            assertEquals("写之前", follower.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWaitTimeout() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>(100);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            startLeader(executor, singleFlight, "q", 0, release, "slow");
+            try {
+                singleFlight.execute("q", () -> "不应执行");
+                fail("等待超时应当抛出 TimeoutException");
+            } catch (TimeoutException expected) {
+                System.out.println("等待超时: " + expected.getMessage());
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
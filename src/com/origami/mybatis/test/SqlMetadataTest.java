@@ -0,0 +1,67 @@
+package com.origami.mybatis.test;
+
+import com.origami.mybatis.cache.SqlMetadata;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SqlMetadataTest {
+
+    private static SqlMetadata parse(String sql) {
+        return SqlMetadata.parse(sql, "id");
+    }
+
+    @Test
+    public void testTables() {
+        assertEquals(Collections.singleton("account"), parse("select * from `test`.`Account` where id = ?").getTables());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("account", "orders")),
+                parse("select a.name from account a join orders o on o.account_id = a.id where a.id = ?").getTables());
+        // 解析失败时为空集合
+        assertTrue(parse("not a sql statement").getTables().isEmpty());
+    }
+
+    @Test
+    public void testKeyedStatements() {
+        SqlMetadata select = parse("select * from account where id = ?");
+        assertTrue(select.isKeyed());
+        assertEquals(0, select.getKeyParameterIndex());
+
+        // SET 中的占位符计入下标
+        SqlMetadata update = parse("update account set money = ?, name = ? where id = ?");
+        assertEquals(2, update.getKeyParameterIndex());
+        assertEquals(7, update.getKeyValue(new Object[]{1, "x", 7}));
+
+        // 主键条件之前的其他条件中的占位符同样计入
+        assertEquals(1, parse("select * from account where money > ? and id = ? order by id").getKeyParameterIndex());
+        assertEquals(0, parse("delete from account where ? = id").getKeyParameterIndex());
+        // 引号内的问号不是占位符
+        assertEquals(0, parse("select * from account where id = ? and name <> '?'").getKeyParameterIndex());
+    }
+
+    @Test
+    public void testNotKeyed() {
+        assertFalse(parse("select * from account where money > ?").isKeyed());
+        assertFalse(parse("select * from account where id = ? or name = ?").isKeyed());
+        assertFalse(parse("select * from account where id in (select account_id from orders where id = ?)").isKeyed());
+        // 修改主键本身会影响两行
+        assertFalse(parse("update account set id = ? where id = ?").isKeyed());
+        assertNull(parse("select * from account").getKeyValue(new Object[]{1}));
+    }
+
+    @Test
+    public void testJoinNotKeyed() {
+        // 自连接只涉及一张表，但结果来自多行
+        assertFalse(parse("select a.* from account a join account b on b.name = a.name where a.id = ?").isKeyed());
+        assertFalse(parse("select a.* from account a, account b where a.id = ? and b.money > a.money").isKeyed());
+        assertFalse(parse("select * from (select * from account) t where id = ?").isKeyed());
+        assertFalse(parse("update account a join account b on b.name = a.name set a.money = b.money where a.id = ?").isKeyed());
+        assertFalse(parse("delete a from account a join account b on b.name = a.name where a.id = ?").isKeyed());
+    }
+}
@@ -0,0 +1,119 @@
+package com.origami.mybatis.test;
+
+import com.origami.mybatis.cache.TimerWheel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long START = 1_756_000_000_123L;
+    // 最细一层的槽位跨度，到期最多延迟一个槽位
+    private static final long TICK = 1024;
+
+    private static class TestTimer extends TimerWheel.Timer {
+        final String name;
+        long expiredAt = -1;
+
+        TestTimer(String name, long deadline) {
+            this.name = name;
+            this.deadline = deadline;
+        }
+
+        long deadline() {
+            return deadline;
+        }
+
+        void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 分别落在四层时间轮中的定时器
+     */
+    private static List<TestTimer> timersAcrossLevels() {
+        return Arrays.asList(
+                new TestTimer("500毫秒", START + 500),
+                new TestTimer("2分钟", START + TimeUnit.MINUTES.toMillis(2)),
+                new TestTimer("3小时", START + TimeUnit.HOURS.toMillis(3)),
+                new TestTimer("5天", START + TimeUnit.DAYS.toMillis(5)),
+                new TestTimer("已过期", START - 1000));
+    }
+
+    @Test
+    public void testExpiryAcrossLevels() {
+        TimerWheel wheel = new TimerWheel(START);
+        List<TestTimer> timers = timersAcrossLevels();
+        timers.forEach(wheel::schedule);
+
+        // 按1秒步长推进6天，每个定时器在到期后一个槽位内到期，且只到期一次
+        long step = 1000;
+        List<TestTimer> expired = new ArrayList<>();
+        for (long now = START + step; now <= START + TimeUnit.DAYS.toMillis(6); now += step) {
+            long current = now;
+            wheel.advance(now, timer -> {
+                TestTimer testTimer = (TestTimer) timer;
+                assertEquals("重复到期: " + testTimer.name, -1, testTimer.expiredAt);
+                testTimer.expiredAt = current;
+                expired.add(testTimer);
+            });
+        }
+
+        assertEquals(timers.size(), expired.size());
+        for (TestTimer timer : timers) {
+            assertTrue(timer.name + " 提前到期", timer.expiredAt >= timer.deadline());
+            assertTrue(timer.name + " 到期过晚", timer.expiredAt <= Math.max(timer.deadline(), START) + TICK + step);
+        }
+    }
+
+    @Test
+    public void testLargeJumpExpiresAll() {
+        TimerWheel wheel = new TimerWheel(START);
+        List<TestTimer> timers = timersAcrossLevels();
+        timers.forEach(wheel::schedule);
+
+        List<TimerWheel.Timer> expired = new ArrayList<>();
+        // 推进到 5天 定时器到期前一刻：只剩它未到期
+        long beforeLast = START + TimeUnit.DAYS.toMillis(5) - 1;
+        wheel.advance(beforeLast, expired::add);
+        assertEquals(timers.size() - 1, expired.size());
+
+        wheel.advance(START + TimeUnit.DAYS.toMillis(30), expired::add);
+        assertEquals(timers.size(), expired.size());
+    }
+
+    @Test
+    public void testDescheduleAndReschedule() {
+        TimerWheel wheel = new TimerWheel(START);
+        TestTimer removed = new TestTimer("移除", START + 2000);
+        TestTimer moved = new TestTimer("延后", START + 2000);
+        wheel.schedule(removed);
+        wheel.schedule(moved);
+
+        wheel.deschedule(removed);
+        // 重复移除被忽略
+        wheel.deschedule(removed);
+        moved.setDeadline(START + TimeUnit.HOURS.toMillis(1));
+        wheel.reschedule(moved);
+
+        List<TimerWheel.Timer> expired = new ArrayList<>();
+        wheel.advance(START + TimeUnit.MINUTES.toMillis(59), expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(START + TimeUnit.MINUTES.toMillis(61), expired::add);
+        assertEquals(Arrays.<TimerWheel.Timer>asList(moved), expired);
+
+        // 清空后不再到期
+        TestTimer cleared = new TestTimer("清空", START + TimeUnit.HOURS.toMillis(2));
+        wheel.schedule(cleared);
+        wheel.clear();
+        wheel.advance(START + TimeUnit.DAYS.toMillis(1), expired::add);
+        assertEquals(1, expired.size());
+    }
+}
@@ -0,0 +1,67 @@
+package com.origami.mybatis.test;
+
+import com.origami.mybatis.cache.CacheKey;
+import com.origami.mybatis.cache.CacheManager;
+import com.origami.mybatis.cache.MemoryCache;
+import com.origami.mybatis.cache.TransactionalCache;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TransactionalCacheTest {
+
+    private static final String SELECT = "select * from account where money > ?";
+    private static final String UPDATE = "update account set money = ? where id = ?";
+
+    private final CacheManager cacheManager = new CacheManager(new MemoryCache("default", 100, 60 * 1000L));
+    private final CacheKey key = new CacheKey("AccountMapper.selectByMoney", SELECT, List.class, new Object[]{100});
+    private final List<String> rows = Arrays.asList("张三", "李四");
+
+    @Test
+    public void testCommitPublishesResult() {
+        TransactionalCache transactionalCache = new TransactionalCache(cacheManager);
+        transactionalCache.put(key, rows, SELECT, cacheManager.currentStamp());
+        // 提交前其他会话看不到
+        assertNull(cacheManager.get(key));
+
+        transactionalCache.commit();
+        assertEquals(rows, cacheManager.get(key));
+    }
+
+    @Test
+    public void testConcurrentWriteSuppressesPublish() {
+        TransactionalCache transactionalCache = new TransactionalCache(cacheManager);
+        transactionalCache.put(key, rows, SELECT, cacheManager.currentStamp());
+
+        // 事务读取之后、提交之前，另一个会话修改了同一张表
+        cacheManager.invalidate(UPDATE, new Object[]{BigDecimal.ONE, 1});
+
+        transactionalCache.commit();
+        assertNull(cacheManager.get(key));
+    }
+
+    @Test
+    public void testWriteBeforeReadStillUsesBeginStamp() {
+        TransactionalCache transactionalCache = new TransactionalCache(cacheManager);
+        // 事务开始后、第一次读取前其他会话修改了表：可重复读的快照可能早于该修改
+        cacheManager.invalidate(UPDATE, new Object[]{BigDecimal.ONE, 1});
+        transactionalCache.put(key, rows, SELECT, cacheManager.currentStamp());
+
+        transactionalCache.commit();
+        assertNull(cacheManager.get(key));
+    }
+
+    @Test
+    public void testRollbackDiscards() {
+        TransactionalCache transactionalCache = new TransactionalCache(cacheManager);
+        transactionalCache.put(key, rows, SELECT, cacheManager.currentStamp());
+        transactionalCache.rollback();
+        transactionalCache.commit();
+        assertNull(cacheManager.get(key));
+    }
+}